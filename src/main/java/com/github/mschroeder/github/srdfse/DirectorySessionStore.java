@@ -0,0 +1,394 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+
+/**
+ * Stores every session in its own directory: the snapshots are named
+ * {@code snapshot.<generation>}, the edits after a snapshot are appended
+ * to {@code edits.<generation>.log} (one JSON object per line).
+ * A new snapshot gets the next generation and is moved in place before
+ * the older files are deleted, so a crash in between leaves a consistent
+ * state behind.
+ * <p>
+ * All writes are done by one background thread. It takes everything which
+ * is queued at once, skips snapshots and edits superseded by a later
+ * snapshot of the same session and forces each touched log only once per
+ * batch to the disk.
+ * <p>
+ * The ids of the stored sessions are kept in memory, so asking for an
+ * unknown id never touches the disk. Loading a session only waits for the
+ * writes still queued for that session. A deleted session stays deleted
+ * for the lifetime of the store: its queued writes are dropped and later
+ * ones are ignored, so they can not create its directory again.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class DirectorySessionStore implements SessionStore, Runnable {
+
+    private static final String SNAPSHOT = "snapshot.";
+    private static final String EDITS = "edits.";
+    private static final String LOG = ".log";
+
+    private static class Write {
+
+        private String sessionId;
+        //one of them or none if it's a delete
+        private byte[] snapshot;
+        private String edit;
+        //completed when the writes before are done
+        private CompletableFuture<Void> barrier;
+    }
+
+    private File directory;
+
+    private LinkedBlockingQueue<Write> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    //current generation of each session, only used by the writer
+    private Map<String, Long> generations;
+
+    //sessions with a snapshot on the disk or in the queue
+    private Set<String> known;
+    private Set<String> deleted;
+
+    //writes in the queue per session, guarded by itself
+    private Map<String, Integer> pending;
+
+    public DirectorySessionStore(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+        this.queue = new LinkedBlockingQueue<>();
+        this.generations = new HashMap<>();
+        this.known = ConcurrentHashMap.newKeySet();
+        this.deleted = ConcurrentHashMap.newKeySet();
+        this.pending = new HashMap<>();
+
+        String[] ids = directory.list();
+        if (ids != null) {
+            for (String id : ids) {
+                if (isValid(id) && lastGeneration(new File(directory, id)) > 0) {
+                    known.add(id);
+                }
+            }
+        }
+
+        this.running = true;
+        this.writer = new Thread(this, "session-store");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void saveSnapshot(String sessionId, OntologySession session) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            SessionSnapshot.write(session, baos);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        Write write = new Write();
+        write.sessionId = sessionId;
+        write.snapshot = baos.toByteArray();
+        enqueue(write);
+    }
+
+    @Override
+    public void appendEdit(String sessionId, JSONObject edit) {
+        Write write = new Write();
+        write.sessionId = sessionId;
+        write.edit = edit.toString();
+        enqueue(write);
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        if (!isValid(sessionId)) {
+            return;
+        }
+        deleted.add(sessionId);
+        known.remove(sessionId);
+
+        //its queued writes are not needed anymore
+        synchronized (pending) {
+            queue.removeIf(w -> w.barrier == null && sessionId.equals(w.sessionId));
+            pending.remove(sessionId);
+            pending.notifyAll();
+        }
+
+        Write write = new Write();
+        write.sessionId = sessionId;
+        queue.add(write);
+    }
+
+    @Override
+    public boolean contains(String sessionId) {
+        return isValid(sessionId) && known.contains(sessionId);
+    }
+
+    @Override
+    public OntologySession load(String sessionId) {
+        if (!contains(sessionId)) {
+            return null;
+        }
+        awaitPending(sessionId);
+
+        File dir = new File(directory, sessionId);
+        long generation = lastGeneration(dir);
+        if (generation == 0) {
+            return null;
+        }
+
+        OntologySession session;
+        try (InputStream is = Files.newInputStream(new File(dir, SNAPSHOT + generation).toPath())) {
+            session = SessionSnapshot.read(is);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        File log = new File(dir, EDITS + generation + LOG);
+        if (log.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(log.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        session.apply(new JSONObject(line));
+                    } catch (Exception e) {
+                        //e.g. the last line was not written completely
+                        System.err.println(sessionId + ": skipped edit " + e.getMessage());
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return session;
+    }
+
+    @Override
+    public void close() {
+        awaitPending();
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Write write) {
+        if (deleted.contains(write.sessionId)) {
+            return;
+        }
+        if (write.snapshot != null) {
+            known.add(write.sessionId);
+        }
+        synchronized (pending) {
+            pending.merge(write.sessionId, 1, Integer::sum);
+            queue.add(write);
+        }
+    }
+
+    //called by the writer when the write is on the disk (or failed)
+    private void done(Write write) {
+        synchronized (pending) {
+            Integer count = pending.get(write.sessionId);
+            if (count == null) {
+                return;
+            }
+            if (count <= 1) {
+                pending.remove(write.sessionId);
+            } else {
+                pending.put(write.sessionId, count - 1);
+            }
+            pending.notifyAll();
+        }
+    }
+
+    //waits until the writes queued for the session are done
+    private void awaitPending(String sessionId) {
+        synchronized (pending) {
+            while (writer.isAlive() && pending.containsKey(sessionId)) {
+                try {
+                    pending.wait(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    //waits until all writes queued before are done
+    private void awaitPending() {
+        if (!writer.isAlive()) {
+            return;
+        }
+        Write write = new Write();
+        write.barrier = new CompletableFuture<>();
+        queue.add(write);
+        write.barrier.join();
+    }
+
+    //the id is used as a directory name
+    private boolean isValid(String sessionId) {
+        return sessionId != null && sessionId.matches("[A-Za-z0-9]+");
+    }
+
+    //==========================================================================
+
+    @Override
+    public void run() {
+        List<Write> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Write first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException ex) {
+                break;
+            }
+            queue.drainTo(batch);
+
+            try {
+                write(batch);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            for (Write write : batch) {
+                if (write.barrier != null) {
+                    write.barrier.complete(null);
+                } else if (write.edit != null || write.snapshot != null) {
+                    done(write);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<Write> batch) throws IOException {
+        //the last snapshot or delete of a session makes the writes before useless
+        Map<String, Integer> lastReset = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Write write = batch.get(i);
+            if (write.barrier == null && write.edit == null) {
+                lastReset.put(write.sessionId, i);
+            }
+        }
+
+        Map<File, FileChannel> logs = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Write write = batch.get(i);
+                if (write.barrier != null || i < lastReset.getOrDefault(write.sessionId, -1)) {
+                    continue;
+                }
+                //queued before it was deleted
+                if (deleted.contains(write.sessionId) && (write.edit != null || write.snapshot != null)) {
+                    continue;
+                }
+
+                File dir = new File(directory, write.sessionId);
+                if (write.edit != null) {
+                    dir.mkdirs();
+                    File log = new File(dir, EDITS + generation(write.sessionId, dir) + LOG);
+                    FileChannel channel = logs.get(log);
+                    if (channel == null) {
+                        channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                        logs.put(log, channel);
+                    }
+                    channel.write(ByteBuffer.wrap((write.edit + "\n").getBytes(StandardCharsets.UTF_8)));
+
+                } else if (write.snapshot != null) {
+                    writeSnapshot(write, dir, logs);
+
+                } else {
+                    generations.remove(write.sessionId);
+                    FileUtils.deleteDirectory(dir);
+                }
+            }
+
+            //once per log and batch
+            for (FileChannel channel : logs.values()) {
+                channel.force(false);
+            }
+        } finally {
+            for (FileChannel channel : logs.values()) {
+                channel.close();
+            }
+        }
+    }
+
+    private void writeSnapshot(Write write, File dir, Map<File, FileChannel> logs) throws IOException {
+        dir.mkdirs();
+        long previous = generation(write.sessionId, dir);
+        long next = previous + 1;
+
+        Path tmp = new File(dir, SNAPSHOT + "tmp").toPath();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(write.snapshot));
+            channel.force(false);
+        }
+        Files.move(tmp, new File(dir, SNAPSHOT + next).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        generations.put(write.sessionId, next);
+
+        //the old ones are only needed until the new snapshot is in place
+        File log = new File(dir, EDITS + previous + LOG);
+        FileChannel channel = logs.remove(log);
+        if (channel != null) {
+            channel.close();
+        }
+        Files.deleteIfExists(log.toPath());
+        Files.deleteIfExists(new File(dir, SNAPSHOT + previous).toPath());
+    }
+
+    private long generation(String sessionId, File dir) {
+        return generations.computeIfAbsent(sessionId, id -> lastGeneration(dir));
+    }
+
+    //0 if there is no snapshot
+    private long lastGeneration(File dir) {
+        long last = 0;
+        String[] names = dir.list();
+        if (names == null) {
+            return last;
+        }
+        for (String name : names) {
+            if (name.startsWith(SNAPSHOT)) {
+                try {
+                    last = Math.max(last, Long.parseLong(name.substring(SNAPSHOT.length())));
+                } catch (NumberFormatException e) {
+                    //the temporary file
+                }
+            }
+        }
+        return last;
+    }
+
+}
@@ -59,6 +59,9 @@ import org.json.JSONObject;
 public class EditorFrame extends javax.swing.JFrame {
 
     private List<Ontology> ontologies;
+    
+    //ids of all ontologies and resources in this editor
+    private IdTable idTable;
 
     //one selected (focused) resource
     private Resource.Type selectedType;
@@ -99,6 +102,7 @@ public class EditorFrame extends javax.swing.JFrame {
     public EditorFrame() {
         initComponents();
         ontologies = new ArrayList<>();
+        idTable = new IdTable();
 
         DefaultComboBoxModel<String> cbm = (DefaultComboBoxModel<String>) jComboBoxLabelLang.getModel();
         cbm.removeAllElements();
@@ -152,7 +156,9 @@ public class EditorFrame extends javax.swing.JFrame {
         newButton(Resource.Type.Class, noevt());
 
         //the one which is created by the user
+        ontologies.forEach(idTable::unregister);
         ontologies.clear();
+        idTable.register(onto);
         ontologies.add(onto);
         jTextFieldOntoURI.setText(getUserOntology().getUri());
         jTextFieldPrefix.setText(getUserOntology().getPrefix());
@@ -187,6 +193,7 @@ public class EditorFrame extends javax.swing.JFrame {
             }
         }
 
+        idTable.register(onto);
         ontologies.add(onto);
         fireEvents(OntologyTreeModel.Modification.Inserted, onto);
 
@@ -202,12 +209,12 @@ public class EditorFrame extends javax.swing.JFrame {
             @Override
             public boolean accept(File f) {
                 String n = f.getName();
-                return f.isDirectory() || n.endsWith("rdf") || n.endsWith("ttl") || n.endsWith("n3") || n.endsWith("jsonld") || n.endsWith("owl");
+                return f.isDirectory() || n.endsWith("rdf") || n.endsWith("ttl") || n.endsWith("n3") || n.endsWith("jsonld") || n.endsWith("owl") || n.endsWith(OntologyBinary.EXTENSION);
             }
 
             @Override
             public String getDescription() {
-                return "RDF Serialzations (*.rdf, *.ttl, *.n3, *.jsonld, *.owl)";
+                return "RDF Serialzations (*.rdf, *.ttl, *.n3, *.jsonld, *.owl, *." + OntologyBinary.EXTENSION + ")";
             }
         });
         jFileChooserLoad.setFileFilter(jFileChooserLoad.getChoosableFileFilters()[1]);
@@ -225,6 +232,18 @@ public class EditorFrame extends javax.swing.JFrame {
                 return "Turtle (*.ttl)";
             }
         });
+        //opens fast, for big ontologies
+        jFileChooserSave.addChoosableFileFilter(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() || f.getName().endsWith(OntologyBinary.EXTENSION);
+            }
+
+            @Override
+            public String getDescription() {
+                return "sRDFSe Binary (*." + OntologyBinary.EXTENSION + ")";
+            }
+        });
         jFileChooserSave.setFileFilter(jFileChooserSave.getChoosableFileFilters()[1]);
         jFileChooserSave.setCurrentDirectory(new File(System.getProperty("user.dir")));
     }
@@ -439,12 +458,12 @@ public class EditorFrame extends javax.swing.JFrame {
             res.getComment().put((String) jComboBoxLabelLang.getSelectedItem(), jTextAreaComment.getText());
 
             if (selectedType == Resource.Type.Class) {
-                getUserOntology().getRootClasses().add(res);
+                getUserOntology().addRoot(res);
 
                 fireEvents(OntologyTreeModel.Modification.Inserted, res);
 
             } else if (selectedType == Resource.Type.Property) {
-                getUserOntology().getRootProperties().add(res);
+                getUserOntology().addRoot(res);
 
                 fireEvents(OntologyTreeModel.Modification.Inserted, res);
             }
@@ -762,7 +781,7 @@ public class EditorFrame extends javax.swing.JFrame {
             property.setDomain(domain);
             property.setRange(range);
 
-            getUserOntology().getRootProperties().add(property);
+            getUserOntology().addRoot(property);
             
             if(guiEvents) {
                 fireEvents(OntologyTreeModel.Modification.Inserted, property);
@@ -818,7 +837,7 @@ public class EditorFrame extends javax.swing.JFrame {
                 srcR = srcR.copyOnlyRef();
             }
 
-            trgO.getRoot(srcR.getType()).add(srcR);
+            trgO.addRoot(srcR);
             
             if(guiEvents) {
                 fireEvents(OntologyTreeModel.Modification.Inserted, srcR);
@@ -845,36 +864,9 @@ public class EditorFrame extends javax.swing.JFrame {
         }
     }
 
-    //called by Server Websocket messageDragAndDrop
-    /*package*/ void dragAndDrop(String srcTreeType, int srcHashCode, String dstTreeType, int dstHashCode) {
-        JTree sourceTree = getTree(TreeType.valueOf(srcTreeType));
-        JTree targetTree = getTree(TreeType.valueOf(dstTreeType));
-        
-        Object src = getObjectByHashCode(srcHashCode);
-        if(src == null)
-            throw new RuntimeException("No src object found for hashCode " + srcHashCode);
-        
-        Object dst = getObjectByHashCode(dstHashCode);
-        if(dst == null)
-            throw new RuntimeException("No dst object found for hashCode " + dstHashCode);
-        
-        dragAndDrop(sourceTree, src, targetTree, dst, false);
-    }
-    
-    /*package*/ Object getObjectByHashCode(int hashCode) {
-        for(Ontology onto : ontologies) {
-            if(onto.hashCode() == hashCode)
-                return onto;
-            
-            Resource res = onto.findByHashCode(hashCode);
-            if(res != null)
-                return res;
-        }
-        return null;
-    }
-    
     /* package */ void removeOntology(Ontology onto) {
         ontologies.remove(onto);
+        idTable.unregister(onto);
     }
 
     private void removeResource(Resource srcR, boolean guiEvents) {
@@ -888,7 +880,7 @@ public class EditorFrame extends javax.swing.JFrame {
         } else {
             Ontology onto = srcR.isImported() ? getUserOntology() : srcR.getOntology();
 
-            onto.getRoot(srcR.getType()).remove(srcR);
+            onto.removeRoot(srcR);
         }
 
         //because we can have two: in case of 'class' we have domain and range
@@ -1433,8 +1425,9 @@ public class EditorFrame extends javax.swing.JFrame {
             if (jFileChooserSave.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File file = jFileChooserSave.getSelectedFile();
                 //if ext is missing: append
-                if (!file.getName().endsWith("ttl")) {
-                    file = new File(file.getAbsolutePath() + ".ttl");
+                if (!file.getName().endsWith("ttl") && !file.getName().endsWith(OntologyBinary.EXTENSION)) {
+                    boolean binary = jFileChooserSave.getFileFilter().getDescription().contains(OntologyBinary.EXTENSION);
+                    file = new File(file.getAbsolutePath() + (binary ? "." + OntologyBinary.EXTENSION : ".ttl"));
                 }
                 updateFile(file);
                 getUserOntology().save(file);
@@ -1470,7 +1463,7 @@ public class EditorFrame extends javax.swing.JFrame {
                     }
                 } else if (obj instanceof Ontology && obj != getUserOntology()) {
                     fireEvents(OntologyTreeModel.Modification.Removed, obj);
-                    ontologies.remove((Ontology) obj);
+                    removeOntology((Ontology) obj);
                 }
             }
         }
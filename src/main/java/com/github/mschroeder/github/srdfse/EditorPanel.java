@@ -62,6 +62,9 @@ import org.json.JSONObject;
 public class EditorPanel extends javax.swing.JPanel {
 
     private List<Ontology> ontologies;
+    
+    //ids of all ontologies and resources in this editor
+    private IdTable idTable;
 
     //one selected (focused) resource
     private Resource.Type selectedType;
@@ -153,7 +156,9 @@ public class EditorPanel extends javax.swing.JPanel {
         newResource(Resource.Type.Class, noevt());
 
         //the one which is created by the user
+        ontologies.forEach(idTable::unregister);
         ontologies.clear();
+        idTable.register(onto);
         ontologies.add(onto);
         jTextFieldOntoURI.setText(getUserOntology().getUri());
         jTextFieldPrefix.setText(getUserOntology().getPrefix());
@@ -212,6 +217,7 @@ public class EditorPanel extends javax.swing.JPanel {
             }
         }
 
+        idTable.register(onto);
         ontologies.add(onto);
         fireEvents(OntologyTreeModel.Modification.Inserted, onto);
 
@@ -352,12 +358,12 @@ public class EditorPanel extends javax.swing.JPanel {
         res.getComment().put(lang, comment);
 
         if (type == Resource.Type.Class) {
-            getUserOntology().getRootClasses().add(res);
+            getUserOntology().addRoot(res);
 
             fireEvents(OntologyTreeModel.Modification.Inserted, res);
 
         } else if (type == Resource.Type.Property) {
-            getUserOntology().getRootProperties().add(res);
+            getUserOntology().addRoot(res);
 
             fireEvents(OntologyTreeModel.Modification.Inserted, res);
             
@@ -404,6 +410,7 @@ public class EditorPanel extends javax.swing.JPanel {
         });
         
         ontologies = new ArrayList<>();
+        idTable = new IdTable();
 
         DefaultComboBoxModel<String> cbm = (DefaultComboBoxModel<String>) jComboBoxLabelLang.getModel();
         cbm.removeAllElements();
@@ -882,12 +889,12 @@ public class EditorPanel extends javax.swing.JPanel {
         res.getComment().put((String) jComboBoxLabelLang.getSelectedItem(), jTextAreaComment.getText());
 
         if (selectedType == Resource.Type.Class) {
-            getUserOntology().getRootClasses().add(res);
+            getUserOntology().addRoot(res);
 
             fireEvents(OntologyTreeModel.Modification.Inserted, res);
 
         } else if (selectedType == Resource.Type.Property) {
-            getUserOntology().getRootProperties().add(res);
+            getUserOntology().addRoot(res);
 
             fireEvents(OntologyTreeModel.Modification.Inserted, res);
         }
@@ -1222,7 +1229,7 @@ public class EditorPanel extends javax.swing.JPanel {
         }
     }
 
-    //called by tree-based and Server-based dragAndDrop
+    //called by the tree-based dragAndDrop
     //src and trg can be Resource or Ontology instance
     private void dragAndDrop(JTree sourceTree, Object src, JTree targetTree, Object trg, boolean guiEvents) {
         //property creation
@@ -1238,7 +1245,7 @@ public class EditorPanel extends javax.swing.JPanel {
             property.setDomain(domain);
             property.setRange(range);
 
-            getUserOntology().getRootProperties().add(property);
+            getUserOntology().addRoot(property);
 
             if (guiEvents) {
                 fireEvents(OntologyTreeModel.Modification.Inserted, property);
@@ -1306,7 +1313,7 @@ public class EditorPanel extends javax.swing.JPanel {
                 srcR = srcR.copyOnlyRef();
             }
 
-            trgO.getRoot(srcR.getType()).add(srcR);
+            trgO.addRoot(srcR);
 
             if (guiEvents) {
                 fireEvents(OntologyTreeModel.Modification.Inserted, srcR);
@@ -1344,41 +1351,13 @@ public class EditorPanel extends javax.swing.JPanel {
         }
     }
 
-
-    //called by Server Websocket messageDragAndDrop
-    /*package*/ void dragAndDrop(String srcTreeType, int srcHashCode, String dstTreeType, int dstHashCode) {
-        JTree sourceTree = getTree(TreeType.valueOf(srcTreeType));
-        JTree targetTree = getTree(TreeType.valueOf(dstTreeType));
-
-        Object src = getObjectByHashCode(srcHashCode);
-        if (src == null) {
-            throw new RuntimeException("No src object found for hashCode " + srcHashCode);
-        }
-
-        Object dst = getObjectByHashCode(dstHashCode);
-        if (dst == null) {
-            throw new RuntimeException("No dst object found for hashCode " + dstHashCode);
-        }
-
-        dragAndDrop(sourceTree, src, targetTree, dst, false);
-    }
-
-    /*package*/ Object getObjectByHashCode(int hashCode) {
-        for (Ontology onto : ontologies) {
-            if (onto.hashCode() == hashCode) {
-                return onto;
-            }
-
-            Resource res = onto.findByHashCode(hashCode);
-            if (res != null) {
-                return res;
-            }
-        }
-        return null;
+    /*package*/ Object getObjectById(long id) {
+        return idTable.get(id);
     }
 
     /* package */ void removeOntology(Ontology onto) {
         ontologies.remove(onto);
+        idTable.unregister(onto);
     }
 
     private void removeResource(Resource srcR, boolean guiEvents) {
@@ -1392,7 +1371,7 @@ public class EditorPanel extends javax.swing.JPanel {
         } else {
             Ontology onto = srcR.isImported() ? getUserOntology() : srcR.getOntology();
 
-            onto.getRoot(srcR.getType()).remove(srcR);
+            onto.removeRoot(srcR);
         }
 
         //because we can have two events: in case of 'class' we have domain and range
@@ -1420,7 +1399,7 @@ public class EditorPanel extends javax.swing.JPanel {
                     }
                 } else if (obj instanceof Ontology && obj != getUserOntology()) {
                     fireEvents(OntologyTreeModel.Modification.Removed, obj);
-                    ontologies.remove((Ontology) obj);
+                    removeOntology((Ontology) obj);
                 }
             }
         }
@@ -1430,12 +1409,8 @@ public class EditorPanel extends javax.swing.JPanel {
         if (evt.getKeyCode() == KeyEvent.VK_DELETE) {
             JList<Resource> jlist = (JList) evt.getSource();
             if(!jlist.isSelectionEmpty()) {
-                for(Resource inst : jlist.getSelectedValuesList()) {
-                    inst.getParent().removeInstance(inst);
-                    
-                    //remove links where resource is part of it
-                    getUserOntology().removeLinksHaving(inst);
-                }
+                //also removes links where resource is part of it
+                getUserOntology().removeInstances(jlist.getSelectedValuesList());
                 jlist.updateUI();
             }
         }
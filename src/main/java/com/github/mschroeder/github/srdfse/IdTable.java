@@ -0,0 +1,185 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ids of the ontologies and resources of one editing session.
+ * Every object gets a compact id from a monotonic counter the first time
+ * it is registered and keeps it as long as it lives, also when it is moved
+ * to another tree. Ids are never reused, so clients can keep them across
+ * reconnects. Objects which already carry an id (e.g. restored from a
+ * snapshot) keep it and the counter continues behind it.
+ * Shared ontologies keep the ids of their own table; their resources are
+ * found through it as long as the ontology is registered here.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class IdTable {
+
+    /**
+     * Is informed about structural changes in the registered ontologies.
+     */
+    public interface Listener {
+
+        public void ontologyRegistered(Ontology onto);
+
+        public void ontologyUnregistered(Ontology onto);
+
+        //a resource (with its subtree) was added to a tree of an ontology
+        public void attached(Resource res);
+
+        //a resource (with its subtree) will be removed from a tree of an ontology
+        public void detached(Resource res);
+    }
+
+    private long lastId;
+    private LongObjectMap<Object> id2object;
+
+    //tables of the registered shared ontologies
+    private List<IdTable> sharedTables;
+
+    private Listener listener;
+
+    public IdTable() {
+        id2object = new LongObjectMap<>();
+        sharedTables = new ArrayList<>();
+    }
+
+    /**
+     * Registers the ontology and all resources in its trees.
+     * Resources added to the trees later are registered by the
+     * {@link ResourceIndex} of the ontology.
+     * @param onto
+     */
+    public void register(Ontology onto) {
+        if (onto.isShared()) {
+            registerShared(onto);
+            return;
+        }
+        onto.setId(nextId(onto.getId()));
+        id2object.put(onto.getId(), onto);
+        onto.getIndex().setIdTable(this);
+        if (listener != null) {
+            listener.ontologyRegistered(onto);
+        }
+    }
+
+    //only a reference, the ids and the index stay with the shared table
+    private void registerShared(Ontology onto) {
+        id2object.put(onto.getId(), onto);
+        IdTable table = onto.getIndex().getIdTable();
+        if (table != null && !sharedTables.contains(table)) {
+            sharedTables.add(table);
+        }
+        if (listener != null) {
+            listener.ontologyRegistered(onto);
+        }
+    }
+
+    public void unregister(Ontology onto) {
+        if (id2object.get(onto.getId()) == onto) {
+            id2object.remove(onto.getId());
+        }
+        if (onto.getIndex().getIdTable() == this) {
+            onto.getIndex().setIdTable(null);
+        }
+        if (listener != null) {
+            listener.ontologyUnregistered(onto);
+        }
+    }
+
+    /*package*/ void put(Resource res) {
+        res.setId(nextId(res.getId()));
+        id2object.put(res.getId(), res);
+    }
+
+    /*package*/ void remove(Resource res) {
+        if (id2object.get(res.getId()) == res) {
+            id2object.remove(res.getId());
+        }
+    }
+
+    /*package*/ void attached(Resource res) {
+        if (listener != null) {
+            listener.attached(res);
+        }
+    }
+
+    /*package*/ void detached(Resource res) {
+        if (listener != null) {
+            listener.detached(res);
+        }
+    }
+
+    private long nextId(long id) {
+        if (id == 0) {
+            return ++lastId;
+        }
+        lastId = Math.max(lastId, id);
+        return id;
+    }
+
+    /**
+     * Returns the ontology or resource having the id.
+     * @param id
+     * @return null if there is none
+     */
+    public Object get(long id) {
+        Object obj = id2object.get(id);
+        if (obj == null && !sharedTables.isEmpty()) {
+            return getShared(id);
+        }
+        return obj;
+    }
+
+    //a resource of a shared ontology which is registered here
+    private Resource getShared(long id) {
+        for (IdTable table : sharedTables) {
+            Resource res = table.getResource(id);
+            if (res != null && res.index != null) {
+                Ontology onto = res.index.getOntology();
+                if (id2object.get(onto.getId()) == onto) {
+                    return res;
+                }
+            }
+        }
+        return null;
+    }
+
+    public Resource getResource(long id) {
+        Object obj = get(id);
+        return obj instanceof Resource ? (Resource) obj : null;
+    }
+
+    public Ontology getOntology(long id) {
+        Object obj = id2object.get(id);
+        return obj instanceof Ontology ? (Ontology) obj : null;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Ids up to the given one are not handed out anymore, e.g. because
+     * they were used before a restart.
+     * @param lastId
+     */
+    public void reserve(long lastId) {
+        this.lastId = Math.max(this.lastId, lastId);
+    }
+
+    public int size() {
+        return id2object.size();
+    }
+
+}
@@ -1,43 +1,199 @@
 package com.github.mschroeder.github.srdfse;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import org.json.JSONObject;
 
 /**
  * Map from langtag to string.
+ * A resource has only a few languages, so the entries are kept in one
+ * array of langtag and string pairs instead of a hash table; the langtags
+ * are interned. The text shown for it ({@link #toString()}) is kept until
+ * the map changes.
  * @author Markus Schr&ouml;der
  */
-public class LangString extends HashMap<String, String> {
+public class LangString extends AbstractMap<String, String> {
+
+    private static final String[] EMPTY = new String[0];
+
+    //langtag, string, langtag, string, ...
+    private String[] entries;
+    private int size;
+
+    //see toString(), null if it changed
+    private String best;
+
+    public LangString() {
+        entries = EMPTY;
+    }
+
+    private int indexOf(Object lang) {
+        for (int i = 0; i < size * 2; i += 2) {
+            if (Objects.equals(entries[i], lang)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(Object lang) {
+        int i = indexOf(lang);
+        return i < 0 ? null : entries[i + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object lang) {
+        return indexOf(lang) >= 0;
+    }
+
+    @Override
+    public String put(String lang, String value) {
+        best = null;
+        int i = indexOf(lang);
+        if (i >= 0) {
+            String old = entries[i + 1];
+            entries[i + 1] = value;
+            return old;
+        }
+        //grows by one, there are only a few
+        if (size * 2 == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length + 2);
+        }
+        entries[size * 2] = lang == null ? null : lang.intern();
+        entries[size * 2 + 1] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object lang) {
+        int i = indexOf(lang);
+        if (i < 0) {
+            return null;
+        }
+        best = null;
+        String old = entries[i + 1];
+        System.arraycopy(entries, i + 2, entries, i, size * 2 - i - 2);
+        size--;
+        entries[size * 2] = null;
+        entries[size * 2 + 1] = null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        best = null;
+        entries = EMPTY;
+        size = 0;
+    }
 
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private int i;
+                    private boolean removable;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < size * 2;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, String> e = new SimpleImmutableEntry<>(entries[i], entries[i + 1]);
+                        i += 2;
+                        removable = true;
+                        return e;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (!removable) {
+                            throw new IllegalStateException();
+                        }
+                        i -= 2;
+                        LangString.this.remove(entries[i]);
+                        removable = false;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //the longest string, computed again only after a change
     @Override
     public String toString() {
+        String s = best;
+        if (s == null) {
+            s = computeBest();
+            best = s;
+        }
+        return s;
+    }
+
+    private String computeBest() {
         if(isEmpty())
             return "";
-        
-        List<Entry<String, String>> l = new ArrayList<>(entrySet());
-        //sort by longest
-        l.sort((o1, o2) -> {
-            return Integer.compare(o2.getValue().length(), o1.getValue().length());
-        });
-        
-        if(l.get(0).getValue().trim().isEmpty())
+
+        //the longest, the first one if several have its length
+        int longest = 0;
+        for (int i = 2; i < size * 2; i += 2) {
+            if (length(entries[i + 1]) > length(entries[longest + 1])) {
+                longest = i;
+            }
+        }
+        String lang = entries[longest];
+        String value = entries[longest + 1];
+
+        if(value == null || value.trim().isEmpty())
             return "";
-        
-        if(l.get(0).getKey().isEmpty()) {
-            return l.get(0).getValue();
+
+        if(lang == null || lang.isEmpty()) {
+            return value;
         }
-        
-        return "\"" + l.get(0).getValue() + "\"@" + l.get(0).getKey();
+
+        return "\"" + value + "\"@" + lang;
+    }
+
+    private static int length(String value) {
+        return value == null ? -1 : value.length();
     }
-    
+
+    //a missing langtag is written as the empty one
     public JSONObject toJSON() {
         JSONObject json = new JSONObject();
-        for(Entry<String, String> e : this.entrySet()) {
-            json.put(e.getKey(), e.getValue());
+        for (int i = 0; i < size * 2; i += 2) {
+            json.put(entries[i] == null ? "" : entries[i], entries[i + 1]);
         }
         return json;
     }
-    
+
 }
@@ -0,0 +1,278 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The links (property assertions) of one property, indexed by subject and
+ * by object, so the objects of a subject and the subjects of an object are
+ * found in time of their number, not of all links.
+ * There is no {@link Link} object per assertion; the set view creates them
+ * while it is iterated. It can not be changed, use {@link #add} and
+ * {@link #remove}.
+ * A subject (or object) with one neighbour maps to the resource itself,
+ * only more neighbours get a {@link Neighbours} list.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class LinkIndex extends AbstractSet<Link> {
+
+    //resource -> Resource or Neighbours
+    private Map<Resource, Object> subject2objects;
+    private Map<Resource, Object> object2subjects;
+    private int size;
+
+    public LinkIndex() {
+        subject2objects = new HashMap<>();
+        object2subjects = new HashMap<>();
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @return false if the link already exists
+     */
+    public boolean add(Resource source, Resource target) {
+        if (!put(subject2objects, source, target)) {
+            return false;
+        }
+        put(object2subjects, target, source);
+        size++;
+        return true;
+    }
+
+    public boolean remove(Resource source, Resource target) {
+        if (!delete(subject2objects, source, target)) {
+            return false;
+        }
+        delete(object2subjects, target, source);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param subject
+     * @return an unmodifiable view, only valid until the links change
+     */
+    public List<Resource> getObjects(Resource subject) {
+        return view(subject2objects.get(subject));
+    }
+
+    /**
+     * @param object
+     * @return an unmodifiable view, only valid until the links change
+     */
+    public List<Resource> getSubjects(Resource object) {
+        return view(object2subjects.get(object));
+    }
+
+    public boolean contains(Resource source, Resource target) {
+        Object value = subject2objects.get(source);
+        if (value instanceof Resource) {
+            return value == target;
+        }
+        return value != null && ((Neighbours) value).indexOf(target) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Link)) {
+            return false;
+        }
+        Link link = (Link) o;
+        return contains(link.getSource(), link.getTarget());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Link> iterator() {
+        Iterator<Map.Entry<Resource, Object>> entries = subject2objects.entrySet().iterator();
+        return new Iterator<Link>() {
+
+            private Resource subject;
+            private List<Resource> objects = Collections.emptyList();
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < objects.size() || entries.hasNext();
+            }
+
+            @Override
+            public Link next() {
+                if (i >= objects.size()) {
+                    if (!entries.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<Resource, Object> e = entries.next();
+                    subject = e.getKey();
+                    objects = view(e.getValue());
+                    i = 0;
+                }
+                return new Link(subject, objects.get(i++));
+            }
+        };
+    }
+
+    //also used by the ResourceIndex for the properties of a resource
+    /*package*/ static boolean put(Map<Resource, Object> map, Resource key, Resource value) {
+        Object old = map.get(key);
+        if (old == null) {
+            map.put(key, value);
+            return true;
+        }
+        if (old instanceof Resource) {
+            if (old == value) {
+                return false;
+            }
+            Neighbours l = new Neighbours();
+            l.insert((Resource) old);
+            l.insert(value);
+            map.put(key, l);
+            return true;
+        }
+        return ((Neighbours) old).insert(value);
+    }
+
+    /*package*/ static boolean delete(Map<Resource, Object> map, Resource key, Resource value) {
+        Object old = map.get(key);
+        if (old == null) {
+            return false;
+        }
+        if (old instanceof Resource) {
+            if (old != value) {
+                return false;
+            }
+            map.remove(key);
+            return true;
+        }
+        Neighbours l = (Neighbours) old;
+        if (!l.delete(value)) {
+            return false;
+        }
+        //back to the single resource
+        if (l.size() == 1) {
+            map.put(key, l.get(0));
+        }
+        return true;
+    }
+
+    /*package*/ static List<Resource> view(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof Resource) {
+            return Collections.singletonList((Resource) value);
+        }
+        return Collections.unmodifiableList((Neighbours) value);
+    }
+
+    /**
+     * The neighbours of a resource which has more than one.
+     * Above {@link #SCAN_SIZE} entries the positions are kept in a hash
+     * table, so adding, finding and removing take constant time also for
+     * hubs (e.g. one object many subjects refer to). A removed entry is
+     * replaced by the last one, the order is not kept.
+     */
+    /*package*/ static class Neighbours extends AbstractList<Resource> implements RandomAccess {
+
+        private static final int SCAN_SIZE = 8;
+
+        private Resource[] items;
+        private int size;
+        private Map<Resource, Integer> positions;
+
+        /*package*/ Neighbours() {
+            items = new Resource[4];
+        }
+
+        /*package*/ int indexOf(Resource res) {
+            if (positions != null) {
+                Integer i = positions.get(res);
+                return i == null ? -1 : i;
+            }
+            for (int i = 0; i < size; i++) {
+                if (items[i] == res) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof Resource ? indexOf((Resource) o) : -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        //false if it is already there
+        /*package*/ boolean insert(Resource res) {
+            if (indexOf(res) >= 0) {
+                return false;
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size] = res;
+            if (positions != null) {
+                positions.put(res, size);
+            }
+            size++;
+            if (positions == null && size > SCAN_SIZE) {
+                positions = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    positions.put(items[i], i);
+                }
+            }
+            return true;
+        }
+
+        /*package*/ boolean delete(Resource res) {
+            int i = indexOf(res);
+            if (i < 0) {
+                return false;
+            }
+            int last = size - 1;
+            items[i] = items[last];
+            items[last] = null;
+            size--;
+            if (positions != null) {
+                positions.remove(res);
+                if (i != last) {
+                    positions.put(items[i], i);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Resource get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.github.mschroeder.github.srdfse;
+
+/**
+ * How many triples a load read and how long it took.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class LoadStatistics {
+
+    private long triples;
+    private long subjects;
+    private long nanos;
+
+    public LoadStatistics(long triples, long subjects, long nanos) {
+        this.triples = triples;
+        this.subjects = subjects;
+        this.nanos = nanos;
+    }
+
+    public long getTriples() {
+        return triples;
+    }
+
+    public long getSubjects() {
+        return subjects;
+    }
+
+    public long getMillis() {
+        return nanos / 1000000;
+    }
+
+    public double getTriplesPerSecond() {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return triples / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return triples + " triples, " + subjects + " subjects in " + getMillis() + " ms (" + Math.round(getTriplesPerSecond()) + " triples/s)";
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open addressing hash map from primitive long keys to objects.
+ * Keys are not boxed and there is no entry object per mapping.
+ * The key 0 is reserved to mark free slots.
+ *
+ * @author Markus Schr&ouml;der
+ * @param <V> the value type
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    //fibonacci hashing spreads the sequential ids over the table
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value.
+     * @param key must not be 0
+     * @param value must not be null
+     * @return the previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V prev = (V) values[i];
+                values[i] = value;
+                return prev;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * 3 / 4) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+
+        V prev = (V) values[i];
+        size--;
+
+        //shift the following entries of the run back, so lookups never stop early
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            //move j to the gap if its home slot is not between gap and j (cyclic)
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        return prev;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept((V) values[i]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+}
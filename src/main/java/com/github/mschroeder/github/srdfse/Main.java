@@ -7,6 +7,8 @@ package com.github.mschroeder.github.srdfse;
 public class Main {
     public static void main(String[] args) {
         if(args.length > 0 && args[0].equals("server")) {
+            //the server has no GUI, sessions only hold the model
+            System.setProperty("java.awt.headless", "true");
             Server server = new Server(args);
         } else {
             EditorPanelFrame.showGUI(args);
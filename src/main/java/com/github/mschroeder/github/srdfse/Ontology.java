@@ -1,32 +1,37 @@
 package com.github.mschroeder.github.srdfse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.util.AbstractMap;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import static java.util.stream.Collectors.toList;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jena.datatypes.RDFDatatype;
 import org.apache.jena.datatypes.TypeMapper;
-import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
-import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.shared.PrefixMapping;
@@ -44,6 +49,12 @@ import org.json.JSONObject;
  */
 public class Ontology {
 
+    //instances or links per parallel task of writeABox
+    private static final int PARTITION_SIZE = 10000;
+
+    //assigned by the IdTable of the session, 0 if not registered yet
+    private long id;
+    
     private String uri;
     private String prefix;
     private String name;
@@ -51,6 +62,10 @@ public class Ontology {
     private String instanceNamespace;
     private String instancePrefix;
 
+    //increased when uri, fragment or instance namespace change; cached uris
+    //of its resources are built again (only the session's actor changes it)
+    private volatile long namespaceVersion;
+
     private List<Resource> rootClasses;
     private List<Resource> rootProperties;
 
@@ -58,6 +73,14 @@ public class Ontology {
     
     private PrefixMapping prefixMapping;
     
+    private ResourceIndex index;
+    
+    //set by load() when read from a file
+    private LoadStatistics loadStatistics;
+    
+    //resource path or content hash if it is shared by all sessions, see VocabularyStore and OntologyCache
+    private String vocabulary;
+    
     //filled by loadABox()
     //private List<Statement> skippedABox;
     
@@ -75,6 +98,8 @@ public class Ontology {
     
         prefixMapping = new PrefixMappingImpl();
         
+        index = new ResourceIndex(this);
+        
         //skippedABox = new ArrayList<>();
     }
 
@@ -82,6 +107,27 @@ public class Ontology {
         return prefixMapping;
     }
     
+    public LoadStatistics getLoadStatistics() {
+        return loadStatistics;
+    }
+
+    /**
+     * A shared ontology is read-only; it is registered in many sessions
+     * and keeps the ids of the {@link VocabularyStore}.
+     * @return 
+     */
+    public boolean isShared() {
+        return vocabulary != null;
+    }
+
+    public String getVocabulary() {
+        return vocabulary;
+    }
+
+    /*package*/ void setVocabulary(String vocabulary) {
+        this.vocabulary = vocabulary;
+    }
+    
     public void addInverseOf(Resource source, Resource target) {
         inverseOf.add(new Link(source, target));
     }
@@ -94,6 +140,10 @@ public class Ontology {
         }
     }
     
+    /*package*/ List<Link> getInverseOfLinks() {
+        return inverseOf;
+    }
+    
     public Resource getInverseOf(Resource res) {
         for(Link link : inverseOf.toArray(new Link[0])) {
             if(link.getSource().equals(res)) {
@@ -114,6 +164,33 @@ public class Ontology {
         throw new RuntimeException("no root list for type " + type);
     }
 
+    /**
+     * Adds a resource to the root list of its type and indexes it.
+     * Use this instead of adding to the lists directly.
+     * @param res 
+     */
+    public void addRoot(Resource res) {
+        getRoot(res.getType()).add(res);
+        index.attach(res);
+    }
+    
+    public void removeRoot(Resource res) {
+        getRoot(res.getType()).remove(res);
+        index.detach(res);
+    }
+    
+    public ResourceIndex getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /*package*/ void setId(long id) {
+        this.id = id;
+    }
+
     public List<Resource> getRootClasses() {
         return rootClasses;
     }
@@ -126,12 +203,21 @@ public class Ontology {
         return uri;
     }
 
+    /*package*/ long getNamespaceVersion() {
+        return namespaceVersion;
+    }
+
     public String getUriWithFragment() {
         return uri + getFragment();
     }
 
     public void setUri(String uri) {
+        boolean changed = !Objects.equals(this.uri, uri);
         this.uri = uri;
+        //after the change, so uris cached meanwhile are not taken as new
+        if (changed) {
+            namespaceVersion++;
+        }
     }
 
     public String getPrefix() {
@@ -158,7 +244,11 @@ public class Ontology {
     }
 
     public void setFragment(String fragment) {
+        boolean changed = !Objects.equals(this.fragment, fragment);
         this.fragment = fragment;
+        if (changed) {
+            namespaceVersion++;
+        }
     }
 
     public String getInstanceNamespace() {
@@ -166,7 +256,11 @@ public class Ontology {
     }
 
     public void setInstanceNamespace(String instanceNamespace) {
+        boolean changed = !Objects.equals(this.instanceNamespace, instanceNamespace);
         this.instanceNamespace = instanceNamespace;
+        if (changed) {
+            namespaceVersion++;
+        }
     }
 
     public String getInstancePrefix() {
@@ -183,74 +277,71 @@ public class Ontology {
     }
 
     public static Ontology load(File file) {
-        Ontology onto = new Ontology();
-
-        Model m = ModelFactory.createDefaultModel();
-
-        /*
-         "RDF/XML", "N-TRIPLE", "TURTLE" (or "TTL") and "N3". null represents the default language, "RDF/XML". 
-         "RDF/XML-ABBREV" is a synonym for "RDF/XML".
-         */
-        StringBuilder sb = new StringBuilder();
+        long begin = System.nanoTime();
+        
+        if (FilenameUtils.isExtension(file.getName(), OntologyBinary.EXTENSION)) {
+            try (InputStream is = new FileInputStream(file)) {
+                return loadBinary(is, begin);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        //syntax is detected once, the file is parsed in a single pass
+        PredicateIndex links = new PredicateIndex();
+        TripleIndex index = new TripleIndex(links);
+        TripleReader.read(file, index);
 
-        boolean success = false;
-        for (String type : Arrays.asList("TURTLE", "N-TRIPLE", "N3", "RDF/XML")) {
+        return load(FilenameUtils.getBaseName(file.getName()), index, links, begin);
+    }
 
-            //try read
-            FileInputStream fis = null;
+    public static Ontology loadTTL(String filename, InputStream is) {
+        long begin = System.nanoTime();
+        
+        if (FilenameUtils.isExtension(filename, OntologyBinary.EXTENSION)) {
             try {
-                fis = new FileInputStream(file);
-                m.read(fis, null, type);
-                success = true;
-            } catch (Exception e) {
-                sb.append(type + ": ");
-                sb.append(e.getMessage());
-                sb.append("\n\n");
-            } finally {
-                try {
-                    fis.close();
-                } catch (IOException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
-
-            if (success) {
-                break;
+                return loadBinary(is, begin);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
             }
         }
+        
+        PredicateIndex links = new PredicateIndex();
+        TripleIndex index = new TripleIndex(links);
+        TripleReader.read(filename, is, index);
 
-        if (!success) {
-            throw new RuntimeException(sb.toString());
-        }
-
-        //guess prefix from file name
-        onto.setPrefix(FilenameUtils.getBaseName(file.getName()));
-
-        loadTBox(onto, m);
-        loadABox(onto, m);
+        return load(FilenameUtils.getBaseName(filename), index, links, begin);
+    }
 
+    //no parsing, the trees are read as they were saved
+    private static Ontology loadBinary(InputStream is, long begin) throws IOException {
+        Ontology onto = OntologyBinary.read(is, false).get(0);
+        onto.loadStatistics = new LoadStatistics(0, onto.index.size(), System.nanoTime() - begin);
         return onto;
     }
 
-    public static Ontology loadTTL(String filename, InputStream is) {
+    private static Ontology load(String prefix, TripleIndex index, PredicateIndex links, long begin) {
         Ontology onto = new Ontology();
 
-        Model m = ModelFactory.createDefaultModel();
-
-        m.read(is, null, "TURTLE");
-
         //guess prefix from file name
-        onto.setPrefix(FilenameUtils.getBaseName(filename));
+        onto.setPrefix(prefix);
 
-        loadTBox(onto, m);
-        loadABox(onto, m);
+        loadTBox(onto, index.getPrefixMap(), index);
+        loadABox(onto, index, links);
 
+        onto.loadStatistics = new LoadStatistics(index.getTripleCount(), index.size(), System.nanoTime() - begin);
+        
         return onto;
     }
 
     //from model to onto
     public static void loadTBox(Ontology onto, Model m) {
-        Map<String, String> prefixMap = m.getNsPrefixMap();
+        loadTBox(onto, m.getNsPrefixMap(), TripleIndex.of(m, null));
+    }
+
+    //triples are already sorted by subject, the model is not queried anymore
+    public static void loadTBox(Ontology onto, Map<String, String> prefixMap, TripleIndex index) {
+        prefixMap = new HashMap<>(prefixMap);
         
         prefixMap.putAll(onto.prefixMapping.getNsPrefixMap());
         
@@ -266,7 +357,7 @@ public class Ontology {
             }
         }
 
-        Map<org.apache.jena.rdf.model.Resource, Resource> mapped = new HashMap<>();
+        Map<Node, Resource> mapped = new HashMap<>();
 
         //for each mapping
         Map<String, Ontology> prefix2onto = new HashMap<>();
@@ -298,14 +389,35 @@ public class Ontology {
         Map<String, String> nsMap = new HashMap<>();
         prefixMap.forEach((a,b) -> nsMap.put(b,a));
         
-        addResouces(m, RDFS.Class, Resource.Type.Class, onto, mapped, rootClasses, prefix2onto, nsMap);
-        addResouces(m, RDFS.Datatype, Resource.Type.Datatype, onto, mapped, rootClasses, prefix2onto, nsMap);
-        addResouces(m, RDF.Property, Resource.Type.Property, onto, mapped, rootProps, prefix2onto, nsMap);
-
-        addRelations(m, RDFS.subClassOf, mapped, rootClasses, SpecialRelation.Sub);
-        addRelations(m, RDFS.subPropertyOf, mapped, rootProps, SpecialRelation.Sub);
-        addRelations(m, RDFS.domain, mapped, rootProps, SpecialRelation.Domain);
-        addRelations(m, RDFS.range, mapped, rootProps, SpecialRelation.Range);
+        //resources which are defined in the file
+        Map<Node, Resource> defined = new HashMap<>();
+        
+        for (TripleIndex.Subject subject : index.getSubjects()) {
+            if (!subject.getNode().isURI()) {
+                continue;
+            }
+            
+            addResource(subject, RDFS.Class, Resource.Type.Class, onto, defined, rootClasses, prefix2onto, nsMap);
+            addResource(subject, RDFS.Datatype, Resource.Type.Datatype, onto, defined, rootClasses, prefix2onto, nsMap);
+            
+            //skip type
+            if (!subject.getNode().equals(RDF.type.asNode())) {
+                addResource(subject, RDF.Property, Resource.Type.Property, onto, defined, rootProps, prefix2onto, nsMap);
+            }
+        }
+        mapped.putAll(defined);
+
+        //only the subjects of mapped resources can have relations
+        Model stmtFactory = ModelFactory.createDefaultModel();
+        for (Entry<Node, Resource> e : defined.entrySet()) {
+            TripleIndex.Subject subject = index.get(e.getKey());
+            Resource s = e.getValue();
+            
+            addRelations(subject.getSubClassOf(), s, mapped, rootClasses, SpecialRelation.Sub, null, null);
+            addRelations(subject.getSubPropertyOf(), s, mapped, rootProps, SpecialRelation.Sub, null, null);
+            addRelations(subject.getDomain(), s, mapped, rootProps, SpecialRelation.Domain, RDFS.domain, stmtFactory);
+            addRelations(subject.getRange(), s, mapped, rootProps, SpecialRelation.Range, RDFS.range, stmtFactory);
+        }
         
         onto.rootClasses.addAll(rootClasses);
         onto.rootProperties.addAll(rootProps);
@@ -313,111 +425,144 @@ public class Ontology {
         Collections.sort(onto.rootClasses);
         Collections.sort(onto.rootProperties);
         
-        loadInverseOf(onto, m);
+        //in sorted order, so a resource gets the same id every time the file is loaded
+        onto.rootClasses.forEach(onto.index::attach);
+        onto.rootProperties.forEach(onto.index::attach);
+        
+        loadInverseOf(onto, defined, index);
     }
 
     //load tbox beforehand
     public static void loadABox(Ontology onto, Model m) {
+        PredicateIndex links = new PredicateIndex();
+        loadABox(onto, TripleIndex.of(m, links), links);
+    }
+
+    //instances are found in the type buckets, links in the buckets of the instances and the groups of the predicates
+    public static void loadABox(Ontology onto, TripleIndex index, PredicateIndex links) {
         
-        //List<org.apache.jena.rdf.model.Resource> jenaInstances = new ArrayList<>(); 
+        //a copy, the index also learns the instances created here
+        Map<String, Resource> uri2resource = new HashMap<>(onto.getUri2ResourceMap());
         
-        Map<String, Resource> uri2resource = onto.getUri2ResourceMap();
+        Map<String, String> ns2prefix = new HashMap<>();
+        index.getPrefixMap().forEach((a,b) -> ns2prefix.put(b,a));
         
-        Map<org.apache.jena.rdf.model.Resource, Resource> jena2res = new HashMap<>();
+        Map<Node, Resource> jena2res = new HashMap<>();
+        List<TripleIndex.Subject> instances = new ArrayList<>();
         
         //instances which have no type are ignored here
-        for(Statement stmt : m.listStatements(null, RDF.type, (RDFNode) null).toList()) {
-            if(!stmt.getObject().isResource())
-                continue;
+        for(TripleIndex.Subject subject : index.getSubjects()) {
+            Resource inst = null;
             
-            if(stmt.getResource().equals(RDF.Property)) {
-                continue;
-            }
-            
-            Resource clazz = uri2resource.get(stmt.getObject().asResource().getURI());
-            if(clazz != null && clazz.getType() == Resource.Type.Class) {
+            for(Node type : subject.getTypes()) {
+                if(!type.isURI() || !subject.getNode().isURI())
+                    continue;
                 
-                String ns = getNameSpace(stmt.getSubject().getURI());
-                String instPrefix = m.getNsURIPrefix(ns);
-                if(instPrefix != null) {
-                    onto.setInstanceNamespace(ns);
-                    onto.setInstancePrefix(instPrefix);
+                if(type.equals(RDF.Property.asNode())) {
+                    continue;
                 }
                 
-                Resource inst = toResource(stmt.getSubject(), m, onto, Resource.Type.Instance, null, m.getNsPrefixMap()); //TODO m.getNsPrefixMap()
-                clazz.addInstance(inst);
-                
-                jena2res.put(stmt.getSubject(), inst);
+                Resource clazz = uri2resource.get(type.getURI());
+                if(clazz != null && clazz.getType() == Resource.Type.Class) {
+                    
+                    String ns = getNameSpace(subject.getNode().getURI());
+                    String instPrefix = ns2prefix.get(ns);
+                    if(instPrefix != null) {
+                        onto.setInstanceNamespace(ns);
+                        onto.setInstancePrefix(instPrefix);
+                    }
+                    
+                    inst = toResource(subject, onto, Resource.Type.Instance, null, ns2prefix);
+                    clazz.addInstance(inst);
+                }
+            }
+            
+            if(inst != null) {
+                jena2res.put(subject.getNode(), inst);
+                instances.add(subject);
             }
         }
         
         onto.listClasses().forEach(clazz -> clazz.getInstances().sort((a, b) -> a.getLocalname().compareTo(b.getLocalname())));
         
         //only the collected instances are iterated, without type is skipped
-        //for all collected instances
-        for(org.apache.jena.rdf.model.Resource jenaInstance : jena2res.keySet()) {
-            
-            Resource subj = jena2res.get(jenaInstance);
+        for(TripleIndex.Subject subject : instances) {
+            Resource subj = jena2res.get(subject.getNode());
             
-            for(Statement triple : m.listStatements(jenaInstance, null, (RDFNode) null).toList()) {
-                Resource prop = uri2resource.get(triple.getPredicate().getURI());
-                
-                if(prop == null) {
-                    //onto.skippedABox.add(triple);
-                    continue;
+            subject.forEachBucket((predicate, objects) -> {
+                Resource prop = uri2resource.get(predicate.getURI());
+                if(prop != null) {
+                    objects.forEach(object -> addLink(onto, prop, subj, object, jena2res));
                 }
-                
-                //literal case
-                if(triple.getObject().isLiteral()) {
-                    Literal lit = triple.getObject().asLiteral();
-                    
-                    Resource literal = new Resource(onto, Resource.Type.Literal);
-                    
-                    if(lit.getDatatypeURI() != null && !lit.getDatatypeURI().isEmpty() && !lit.getDatatypeURI().equals(XSD.xstring.getURI())) {
-                        literal.getComment().put("datatype", lit.getDatatypeURI());
-                    }
-                    literal.getComment().put("", lit.getLexicalForm());
-                    
-                    prop.addLink(subj, literal);
-                    continue;
+            });
+        }
+        
+        //a group of a predicate which is no known property is skipped as a whole
+        for(Node predicate : links.getPredicates()) {
+            Resource prop = uri2resource.get(predicate.getURI());
+            
+            if(prop == null) {
+                continue;
+            }
+            
+            for(Triple triple : links.get(predicate)) {
+                Resource subj = jena2res.get(triple.getSubject());
+                if(subj != null) {
+                    addLink(onto, prop, subj, triple.getObject(), jena2res);
                 }
+            }
+        }
+    }
+    
+    private static void addLink(Ontology onto, Resource prop, Resource subj, Node object, Map<Node, Resource> jena2res) {
+        //literal case
+        if(object.isLiteral()) {
+            Resource literal = new Resource(onto, Resource.Type.Literal);
+
+            String datatypeURI = object.getLiteralDatatypeURI();
+            if(datatypeURI != null && !datatypeURI.isEmpty() && !datatypeURI.equals(XSD.xstring.getURI())) {
+                literal.getComment().put("datatype", datatypeURI);
+            }
+            literal.getComment().put("", object.getLiteralLexicalForm());
 
-                //resource case
-                if(!triple.getObject().isResource())
-                    continue;
-                
-                Resource obj  = jena2res.get(triple.getObject().asResource());
-                
-                if(obj != null) {
-                    prop.addLink(subj, obj);
+            //a literal stated twice is a new resource, so it is compared by value
+            for(Resource other : prop.getObjects(subj)) {
+                if(other.getType() == Resource.Type.Literal && other.getComment().equals(literal.getComment())) {
+                    return;
                 }
             }
+
+            prop.addLink(subj, literal);
+            return;
+        }
+
+        //resource case
+        Resource obj = jena2res.get(object);
+
+        if(obj != null) {
+            prop.addLink(subj, obj);
         }
     }
     
-    private static void addResouces(Model m, org.apache.jena.rdf.model.Resource typeResource, Resource.Type type, Ontology onto, Map<org.apache.jena.rdf.model.Resource, Resource> mapped, Set<Resource> roots, Map<String, Ontology> prefix2onto, Map<String, String> nsMap) {
-        for (org.apache.jena.rdf.model.Resource jena : m.listSubjectsWithProperty(RDF.type, typeResource).toList()) {
-            //skip type
-            if(typeResource.equals(RDF.Property) && jena.equals(RDF.type)) {
-                continue;
-            }
-            
-            Resource res = toResource(jena, m, onto, type, prefix2onto, nsMap);
-            roots.add(res);
-            mapped.put(jena, res);
+    private static void addResource(TripleIndex.Subject subject, org.apache.jena.rdf.model.Resource typeResource, Resource.Type type, Ontology onto, Map<Node, Resource> mapped, Set<Resource> roots, Map<String, Ontology> prefix2onto, Map<String, String> nsMap) {
+        if (!subject.hasType(typeResource.asNode())) {
+            return;
         }
+        
+        Resource res = toResource(subject, onto, type, prefix2onto, nsMap);
+        roots.add(res);
+        mapped.put(subject.getNode(), res);
     }
 
-    private static void addRelations(Model m, Property p, Map<org.apache.jena.rdf.model.Resource, Resource> mapped, Set<Resource> root, SpecialRelation special) {
-        for (Statement stmt : m.listStatements(null, p, (RDFNode) null).toList()) {
-            if (!stmt.getObject().isURIResource()) {
+    private static void addRelations(List<Node> objects, Resource s, Map<Node, Resource> mapped, Set<Resource> root, SpecialRelation special, Property p, Model stmtFactory) {
+        for (Node object : objects) {
+            if (!object.isURI()) {
                 continue;
             }
 
-            Resource s = mapped.get(stmt.getSubject());
-            Resource o = mapped.get(stmt.getObject().asResource());
+            Resource o = mapped.get(object);
 
-            if (s == null || o == null) {
+            if (o == null) {
                 continue;
             }
 
@@ -426,19 +571,27 @@ public class Ontology {
                 root.remove(s);
             } else if (special == SpecialRelation.Domain) {
                 if(s.hasDomain()) {
-                    s.getAdditionalDomainRangeStatements().add(stmt);
+                    s.addAdditionalDomainRangeStatement(toStatement(s, p, object, stmtFactory));
                 } else {
                     s.setDomain(o);
                 }
             } else if (special == SpecialRelation.Range) {
                 if(s.hasRange()) {
-                    s.getAdditionalDomainRangeStatements().add(stmt);
+                    s.addAdditionalDomainRangeStatement(toStatement(s, p, object, stmtFactory));
                 } else {
                     s.setRange(o);
                 }
             }
         }
     }
+    
+    private static Statement toStatement(Resource s, Property p, Node object, Model stmtFactory) {
+        return stmtFactory.createStatement(
+                ResourceFactory.createResource(s.getURI()),
+                p,
+                stmtFactory.asRDFNode(object)
+        );
+    }
 
     private static enum SpecialRelation {
         Sub,
@@ -446,8 +599,9 @@ public class Ontology {
         Range
     }
 
-    private static Resource toResource(org.apache.jena.rdf.model.Resource jenaRes, Model model, Ontology onto, Resource.Type type, Map<String, Ontology> prefix2onto, Map<String, String> nsMap) {
-        String prefix = nsMap.get(getNameSpace(jenaRes.getURI()));
+    private static Resource toResource(TripleIndex.Subject subject, Ontology onto, Resource.Type type, Map<String, Ontology> prefix2onto, Map<String, String> nsMap) {
+        String subjectURI = subject.getNode().getURI();
+        String prefix = nsMap.get(getNameSpace(subjectURI));
         
         Ontology trgOnto = prefix2onto == null ? null : prefix2onto.get(prefix);
         if (trgOnto == null) {
@@ -457,312 +611,442 @@ public class Ontology {
         Resource res = new Resource(trgOnto, type);
         res.setImported(trgOnto != onto);
 
-        String localname = getLocalName(jenaRes.getURI());
+        String localname = getLocalName(subjectURI);
         //sometimes getLocalName does not work; so fix it
-        if (localname.isEmpty() && !trgOnto.getUri().isEmpty() && jenaRes.getURI().startsWith(trgOnto.getUri())) {
-            localname = jenaRes.getURI().substring(trgOnto.getUriWithFragment().length());
+        if (localname.isEmpty() && !trgOnto.getUri().isEmpty() && subjectURI.startsWith(trgOnto.getUri())) {
+            localname = subjectURI.substring(trgOnto.getUriWithFragment().length());
         }
         res.setLocalname(localname);
 
-        for (Statement stmt : model.listStatements(jenaRes, RDFS.label, (RDFNode) null).toList()) {
-            if (!stmt.getObject().isLiteral()) {
+        for (Node lit : subject.getLabel()) {
+            if (!lit.isLiteral()) {
                 continue;
             }
 
-            Literal lit = stmt.getObject().asLiteral();
-            res.getLabel().put(lit.getLanguage(), lit.getLexicalForm());
+            res.getLabel().put(lit.getLiteralLanguage(), lit.getLiteralLexicalForm());
         }
 
-        for (Statement stmt : model.listStatements(jenaRes, RDFS.comment, (RDFNode) null).toList()) {
-            if (!stmt.getObject().isLiteral()) {
+        for (Node lit : subject.getComment()) {
+            if (!lit.isLiteral()) {
                 continue;
             }
 
-            Literal lit = stmt.getObject().asLiteral();
-            res.getComment().put(lit.getLanguage(), lit.getLexicalForm());
+            res.getComment().put(lit.getLiteralLanguage(), lit.getLiteralLexicalForm());
         }
 
         return res;
     }
 
-    private static void loadInverseOf(Ontology onto, Model m) {
-        for(Statement stmt : m.listStatements(null, OWL.inverseOf, (RDFNode) null).toList()) {
-            
-            Resource subj = onto.findByUri(stmt.getSubject().getURI());
-            Resource obj = onto.findByUri(stmt.getObject().asResource().getURI());
-            
-            if(subj != null && obj != null) {
-                onto.addInverseOf(subj, obj);
-            }
-        }
-    }
-    
-    private static void initXSD(Map<org.apache.jena.rdf.model.Resource, Resource> map, Ontology onto) {
-        map.put(XSD.anyURI, new Resource(onto, Resource.Type.Class, "anyURI"));
-        map.put(XSD.base64Binary, new Resource(onto, Resource.Type.Class, "base64Binary"));
-        map.put(XSD.date, new Resource(onto, Resource.Type.Class, "date"));
-        map.put(XSD.dateTime, new Resource(onto, Resource.Type.Class, "dateTime"));
-        map.put(XSD.dateTimeStamp, new Resource(onto, Resource.Type.Class, "dateTimeStamp"));
-        map.put(XSD.dayTimeDuration, new Resource(onto, Resource.Type.Class, "dayTimeDuration"));
-        map.put(XSD.decimal, new Resource(onto, Resource.Type.Class, "decimal"));
-        map.put(XSD.duration, new Resource(onto, Resource.Type.Class, "duration"));
-        map.put(XSD.ENTITIES, new Resource(onto, Resource.Type.Class, "ENTITIES"));
-        map.put(XSD.ENTITY, new Resource(onto, Resource.Type.Class, "ENTITY"));
-        map.put(XSD.gDay, new Resource(onto, Resource.Type.Class, "gDay"));
-        map.put(XSD.gMonth, new Resource(onto, Resource.Type.Class, "gMonth"));
-        map.put(XSD.gMonthDay, new Resource(onto, Resource.Type.Class, "gMonthDay"));
-        map.put(XSD.gYear, new Resource(onto, Resource.Type.Class, "gYear"));
-        map.put(XSD.gYearMonth, new Resource(onto, Resource.Type.Class, "gYearMonth"));
-        map.put(XSD.hexBinary, new Resource(onto, Resource.Type.Class, "hexBinary"));
-        map.put(XSD.ID, new Resource(onto, Resource.Type.Class, "ID"));
-        map.put(XSD.IDREF, new Resource(onto, Resource.Type.Class, "IDREF"));
-        map.put(XSD.IDREFS, new Resource(onto, Resource.Type.Class, "IDREFS"));
-        map.put(XSD.integer, new Resource(onto, Resource.Type.Class, "integer"));
-        map.put(XSD.language, new Resource(onto, Resource.Type.Class, "language"));
-        map.put(XSD.Name, new Resource(onto, Resource.Type.Class, "Name"));
-        map.put(XSD.NCName, new Resource(onto, Resource.Type.Class, "NCName"));
-        map.put(XSD.negativeInteger, new Resource(onto, Resource.Type.Class, "negativeInteger"));
-        map.put(XSD.NMTOKEN, new Resource(onto, Resource.Type.Class, "NMTOKEN"));
-        map.put(XSD.NMTOKENS, new Resource(onto, Resource.Type.Class, "NMTOKENS"));
-        map.put(XSD.nonNegativeInteger, new Resource(onto, Resource.Type.Class, "nonNegativeInteger"));
-        map.put(XSD.nonPositiveInteger, new Resource(onto, Resource.Type.Class, "nonPositiveInteger"));
-        map.put(XSD.normalizedString, new Resource(onto, Resource.Type.Class, "normalizedString"));
-        map.put(XSD.NOTATION, new Resource(onto, Resource.Type.Class, "NOTATION"));
-        map.put(XSD.positiveInteger, new Resource(onto, Resource.Type.Class, "positiveInteger"));
-        map.put(XSD.QName, new Resource(onto, Resource.Type.Class, "QName"));
-        map.put(XSD.time, new Resource(onto, Resource.Type.Class, "time"));
-        map.put(XSD.token, new Resource(onto, Resource.Type.Class, "token"));
-        map.put(XSD.unsignedByte, new Resource(onto, Resource.Type.Class, "unsignedByte"));
-        map.put(XSD.unsignedInt, new Resource(onto, Resource.Type.Class, "unsignedInt"));
-        map.put(XSD.unsignedLong, new Resource(onto, Resource.Type.Class, "unsignedLong"));
-        map.put(XSD.unsignedShort, new Resource(onto, Resource.Type.Class, "unsignedShort"));
-        map.put(XSD.xboolean, new Resource(onto, Resource.Type.Class, "boolean"));
-        map.put(XSD.xbyte, new Resource(onto, Resource.Type.Class, "byte"));
-        map.put(XSD.xdouble, new Resource(onto, Resource.Type.Class, "double"));
-        map.put(XSD.xfloat, new Resource(onto, Resource.Type.Class, "float"));
-        map.put(XSD.xint, new Resource(onto, Resource.Type.Class, "int"));
-        map.put(XSD.xlong, new Resource(onto, Resource.Type.Class, "long"));
-        map.put(XSD.xshort, new Resource(onto, Resource.Type.Class, "short"));
-        map.put(XSD.xstring, new Resource(onto, Resource.Type.Class, "string"));
-        map.put(XSD.yearMonthDuration, new Resource(onto, Resource.Type.Class, "yearMonthDuration"));
-    }
-    
-    private static void initRDFSLiteral(Map<org.apache.jena.rdf.model.Resource, Resource> map, Ontology onto) {
-        map.put(RDFS.Literal, new Resource(onto, Resource.Type.Class, "Literal"));
+    private static void loadInverseOf(Ontology onto, Map<Node, Resource> defined, TripleIndex index) {
+        for(Entry<Node, Resource> e : defined.entrySet()) {
+            for(Node object : index.get(e.getKey()).getInverseOf()) {
+                Resource obj = defined.get(object);
+                if(obj != null) {
+                    onto.addInverseOf(e.getValue(), obj);
+                }
+            }
+        }
+    }
+    
+    private static void initXSD(Map<Node, Resource> map, Ontology onto) {
+        map.put(asNode(XSD.anyURI), new Resource(onto, Resource.Type.Class, "anyURI"));
+        map.put(asNode(XSD.base64Binary), new Resource(onto, Resource.Type.Class, "base64Binary"));
+        map.put(asNode(XSD.date), new Resource(onto, Resource.Type.Class, "date"));
+        map.put(asNode(XSD.dateTime), new Resource(onto, Resource.Type.Class, "dateTime"));
+        map.put(asNode(XSD.dateTimeStamp), new Resource(onto, Resource.Type.Class, "dateTimeStamp"));
+        map.put(asNode(XSD.dayTimeDuration), new Resource(onto, Resource.Type.Class, "dayTimeDuration"));
+        map.put(asNode(XSD.decimal), new Resource(onto, Resource.Type.Class, "decimal"));
+        map.put(asNode(XSD.duration), new Resource(onto, Resource.Type.Class, "duration"));
+        map.put(asNode(XSD.ENTITIES), new Resource(onto, Resource.Type.Class, "ENTITIES"));
+        map.put(asNode(XSD.ENTITY), new Resource(onto, Resource.Type.Class, "ENTITY"));
+        map.put(asNode(XSD.gDay), new Resource(onto, Resource.Type.Class, "gDay"));
+        map.put(asNode(XSD.gMonth), new Resource(onto, Resource.Type.Class, "gMonth"));
+        map.put(asNode(XSD.gMonthDay), new Resource(onto, Resource.Type.Class, "gMonthDay"));
+        map.put(asNode(XSD.gYear), new Resource(onto, Resource.Type.Class, "gYear"));
+        map.put(asNode(XSD.gYearMonth), new Resource(onto, Resource.Type.Class, "gYearMonth"));
+        map.put(asNode(XSD.hexBinary), new Resource(onto, Resource.Type.Class, "hexBinary"));
+        map.put(asNode(XSD.ID), new Resource(onto, Resource.Type.Class, "ID"));
+        map.put(asNode(XSD.IDREF), new Resource(onto, Resource.Type.Class, "IDREF"));
+        map.put(asNode(XSD.IDREFS), new Resource(onto, Resource.Type.Class, "IDREFS"));
+        map.put(asNode(XSD.integer), new Resource(onto, Resource.Type.Class, "integer"));
+        map.put(asNode(XSD.language), new Resource(onto, Resource.Type.Class, "language"));
+        map.put(asNode(XSD.Name), new Resource(onto, Resource.Type.Class, "Name"));
+        map.put(asNode(XSD.NCName), new Resource(onto, Resource.Type.Class, "NCName"));
+        map.put(asNode(XSD.negativeInteger), new Resource(onto, Resource.Type.Class, "negativeInteger"));
+        map.put(asNode(XSD.NMTOKEN), new Resource(onto, Resource.Type.Class, "NMTOKEN"));
+        map.put(asNode(XSD.NMTOKENS), new Resource(onto, Resource.Type.Class, "NMTOKENS"));
+        map.put(asNode(XSD.nonNegativeInteger), new Resource(onto, Resource.Type.Class, "nonNegativeInteger"));
+        map.put(asNode(XSD.nonPositiveInteger), new Resource(onto, Resource.Type.Class, "nonPositiveInteger"));
+        map.put(asNode(XSD.normalizedString), new Resource(onto, Resource.Type.Class, "normalizedString"));
+        map.put(asNode(XSD.NOTATION), new Resource(onto, Resource.Type.Class, "NOTATION"));
+        map.put(asNode(XSD.positiveInteger), new Resource(onto, Resource.Type.Class, "positiveInteger"));
+        map.put(asNode(XSD.QName), new Resource(onto, Resource.Type.Class, "QName"));
+        map.put(asNode(XSD.time), new Resource(onto, Resource.Type.Class, "time"));
+        map.put(asNode(XSD.token), new Resource(onto, Resource.Type.Class, "token"));
+        map.put(asNode(XSD.unsignedByte), new Resource(onto, Resource.Type.Class, "unsignedByte"));
+        map.put(asNode(XSD.unsignedInt), new Resource(onto, Resource.Type.Class, "unsignedInt"));
+        map.put(asNode(XSD.unsignedLong), new Resource(onto, Resource.Type.Class, "unsignedLong"));
+        map.put(asNode(XSD.unsignedShort), new Resource(onto, Resource.Type.Class, "unsignedShort"));
+        map.put(asNode(XSD.xboolean), new Resource(onto, Resource.Type.Class, "boolean"));
+        map.put(asNode(XSD.xbyte), new Resource(onto, Resource.Type.Class, "byte"));
+        map.put(asNode(XSD.xdouble), new Resource(onto, Resource.Type.Class, "double"));
+        map.put(asNode(XSD.xfloat), new Resource(onto, Resource.Type.Class, "float"));
+        map.put(asNode(XSD.xint), new Resource(onto, Resource.Type.Class, "int"));
+        map.put(asNode(XSD.xlong), new Resource(onto, Resource.Type.Class, "long"));
+        map.put(asNode(XSD.xshort), new Resource(onto, Resource.Type.Class, "short"));
+        map.put(asNode(XSD.xstring), new Resource(onto, Resource.Type.Class, "string"));
+        map.put(asNode(XSD.yearMonthDuration), new Resource(onto, Resource.Type.Class, "yearMonthDuration"));
+    }
+    
+    //some vocabulary constants are not defined in every Jena version
+    private static Node asNode(org.apache.jena.rdf.model.Resource res) {
+        return res == null ? null : res.asNode();
+    }
+    
+    private static void initRDFSLiteral(Map<Node, Resource> map, Ontology onto) {
+        map.put(asNode(RDFS.Literal), new Resource(onto, Resource.Type.Class, "Literal"));
     }
 
     public void save(File file) {
-        Model union = getTBoxABoxModel();
+        if (FilenameUtils.isExtension(file.getName(), OntologyBinary.EXTENSION)) {
+            try (OutputStream os = new FileOutputStream(file)) {
+                saveBinary(os);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            return;
+        }
         
-        try {
-            union.write(new FileOutputStream(file), "TTL", uri);
-        } catch (FileNotFoundException ex) {
+        try (OutputStream os = new FileOutputStream(file)) {
+            writeTTL(os);
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
-    public String toTTL() {
-        Model union = getTBoxABoxModel();
+    //with the ontologies it refers to, see OntologyBinary
+    public void saveBinary(OutputStream os) throws IOException {
+        OntologyBinary.write(Arrays.asList(this), os);
+    }
 
-        StringWriter sw = new StringWriter();
-        union.write(sw, "TTL", uri);
+    public String toTTL() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            writeTTL(baos);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-        return sw.toString();
+    //streamed, no model is built
+    private void writeTTL(OutputStream os) throws IOException {
+        try (TripleWriter writer = new TripleWriter(os, TripleReader.Syntax.Turtle)) {
+            writeTBox(writer);
+            writeABox(writer);
+        }
     }
 
     public Model getTBoxModel() {
         Model m = ModelFactory.createDefaultModel();
-        m.setNsPrefix(prefix, getUriWithFragment());
-        m.setNsPrefix("rdf", RDF.getURI());
-        m.setNsPrefix("rdfs", RDFS.getURI());
+        writeTBox(handler(m));
+        return m;
+    }
+
+    //see writeABox(TripleReader.Handler)
+    public Model getABoxModel() {
+        Model m = ModelFactory.createDefaultModel();
+        writeABox(handler(m));
+        return m;
+    }
+    
+    //TBox and ABox are generated at the same time
+    public Model getTBoxABoxModel() {
+        CompletableFuture<Model> tbox = CompletableFuture.supplyAsync(this::getTBoxModel);
+        Model abox = getABoxModel();
+        return ModelFactory.createUnion(tbox.join(), abox);
+    }
+
+    //collects the prefixes and triples in a model
+    private static TripleReader.Handler handler(Model m) {
+        return new TripleReader.Handler() {
+            @Override
+            public void prefix(String prefix, String uri) {
+                m.setNsPrefix(prefix, uri);
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                m.getGraph().add(triple);
+            }
+        };
+    }
+
+    /**
+     * Hands the prefixes and triples of the TBox to the handler without
+     * building a model. All prefixes are given before the first triple.
+     * @param out e.g. a {@link TripleWriter}
+     */
+    public void writeTBox(TripleReader.Handler out) {
+        Set<Resource> classes = resources(rootClasses);
+        Set<Resource> properties = resources(rootProperties);
+
+        out.prefix(prefix, getUriWithFragment());
+        out.prefix("rdf", RDF.getURI());
+        out.prefix("rdfs", RDFS.getURI());
+        if(!inverseOf.isEmpty()) {
+            out.prefix("owl", OWL.NS);
+        }
+        
+        //collect all referred ontologies
+        Map<String, String> referred = new HashMap<>();
+        for (Set<Resource> s : Arrays.asList(classes, properties)) {
+            for (Resource r : s) {
+                referred.put(r.getOntology().getPrefix(), r.getOntology().getUriWithFragment());
+                //domain/range
+                if (r.getType() == Resource.Type.Property) {
+                    if (r.hasDomain()) {
+                        referred.put(r.getDomain().getOntology().getPrefix(), r.getDomain().getOntology().getUriWithFragment());
+                    }
+                    if (r.hasRange()) {
+                        referred.put(r.getRange().getOntology().getPrefix(), r.getRange().getOntology().getUriWithFragment());
+                    }
+                }
+            }
+        }
+        referred.forEach(out::prefix);
 
         //subClassOf
-        createStatements(rootClasses, m, RDFS.subClassOf);
-        createResources(resources(rootClasses), RDFS.Class, m);
+        writeSubRelations(rootClasses, RDFS.subClassOf.asNode(), out);
+        writeResources(classes, RDFS.Class.asNode(), out);
 
         //subPropertyOf
-        createStatements(rootProperties, m, RDFS.subPropertyOf);
-        createResources(resources(rootProperties), RDF.Property, m);
+        writeSubRelations(rootProperties, RDFS.subPropertyOf.asNode(), out);
+        writeResources(properties, RDF.Property.asNode(), out);
 
         //inverseOf (use alt + drag&drop)
         for(Link link : inverseOf) {
-            org.apache.jena.rdf.model.Resource a = ResourceFactory.createResource(link.getSource().getURI());
-            org.apache.jena.rdf.model.Resource b = ResourceFactory.createResource(link.getTarget().getURI());
-            m.add(a, OWL.inverseOf, b);
+            out.triple(Triple.create(
+                    link.getSource().asNode(),
+                    OWL.inverseOf.asNode(),
+                    link.getTarget().asNode()
+            ));
         }
-        
-        if(!inverseOf.isEmpty()) {
-            m.setNsPrefix("owl", OWL.NS);
-        }
-        
-        return m;
     }
 
-    private void createStatements(List<Resource> l, Model m, org.apache.jena.rdf.model.Property p) {
-        List<Map.Entry<Resource, Resource>> subOfs = subRelations(l);
-        for (Map.Entry<Resource, Resource> e : subOfs) {
-            m.add(
-                    ResourceFactory.createResource(e.getKey().getURI()),
-                    p,
-                    ResourceFactory.createResource(e.getValue().getURI())
-            );
+    private void writeSubRelations(List<Resource> inputList, Node p, TripleReader.Handler out) {
+        ResourceCursor cursor = new ResourceCursor();
+        for (Resource root : inputList) {
+            for (cursor.reset(root); cursor.hasNext(); ) {
+                Resource r = cursor.next();
+                for (Resource child : r.getChildren()) {
+                    out.triple(Triple.create(child.asNode(), p, r.asNode()));
+                }
+            }
         }
     }
 
-    private List<org.apache.jena.rdf.model.Resource> createResources(Set<Resource> s, org.apache.jena.rdf.model.Resource type, Model m) {
-        List<org.apache.jena.rdf.model.Resource> l = new ArrayList<>();
+    private void writeResources(Set<Resource> s, Node type, TripleReader.Handler out) {
         for (Resource r : s) {
-            //collect all referred ontologies
-            m.setNsPrefix(r.getOntology().getPrefix(), r.getOntology().getUriWithFragment());
+            writeResource(r, type, out);
+        }
+    }
 
-            //domain/range (collect all referred ontologies)
-            if (r.getType() == Resource.Type.Property) {
-                if (r.hasDomain()) {
-                    m.setNsPrefix(r.getDomain().getOntology().getPrefix(), r.getDomain().getOntology().getUriWithFragment());
-                }
-                if (r.hasRange()) {
-                    m.setNsPrefix(r.getRange().getOntology().getPrefix(), r.getRange().getOntology().getUriWithFragment());
-                }
-            }
+    private void writeResource(Resource r, Node type, TripleReader.Handler out) {
+        Node node = r.asNode();
+        out.triple(Triple.create(node, RDF.type.asNode(), type));
 
-            org.apache.jena.rdf.model.Resource jenaRes = ResourceFactory.createResource(r.getURI());
-            m.add(jenaRes, RDF.type, type);
+        //only read, so they are not created
+        if (r.hasLabel()) {
+            writeLangString(node, RDFS.label.asNode(), r.getLabel(), out);
+        }
+        if (r.hasComment()) {
+            writeLangString(node, RDFS.comment.asNode(), r.getComment(), out);
+        }
 
-            for (Entry<String, String> e : r.getLabel().entrySet()) {
-                if (!e.getValue().trim().isEmpty()) {
-                    m.add(jenaRes, RDFS.label, e.getValue().trim(), e.getKey());
-                }
+        if (type.equals(RDF.Property.asNode())) {
+            if (r.hasDomain()) {
+                out.triple(Triple.create(node, RDFS.domain.asNode(), r.getDomain().asNode()));
             }
-            for (Entry<String, String> e : r.getComment().entrySet()) {
-                if (!e.getValue().trim().isEmpty()) {
-                    m.add(jenaRes, RDFS.comment, e.getValue().trim(), e.getKey());
-                }
+            if (r.hasRange()) {
+                out.triple(Triple.create(node, RDFS.range.asNode(), r.getRange().asNode()));
             }
 
-            if (type == RDF.Property) {
-                if (r.hasDomain()) {
-                    m.add(jenaRes, RDFS.domain, ResourceFactory.createResource(r.getDomain().getURI()));
-                }
-                if (r.hasRange()) {
-                    m.add(jenaRes, RDFS.range, ResourceFactory.createResource(r.getRange().getURI()));
-                }
-                
-                for(Statement stmt : r.getAdditionalDomainRangeStatements()) {
-                    m.add(jenaRes, stmt.getPredicate(), stmt.getObject());
-                }
+            for(Statement stmt : r.getAdditionalDomainRangeStatements()) {
+                out.triple(Triple.create(node, stmt.getPredicate().asNode(), stmt.getObject().asNode()));
             }
-            
-            l.add(jenaRes);
         }
-        return l;
     }
 
-    private List<Map.Entry<Resource, Resource>> subRelations(List<Resource> inputList) {
-        List<Map.Entry<Resource, Resource>> l = new ArrayList<>();
-
-        Queue<Resource> q = new LinkedList<>();
-        q.addAll(inputList);
-
-        while (!q.isEmpty()) {
-            Resource r = q.poll();
-            for (Resource child : r.getChildren()) {
-                l.add(new AbstractMap.SimpleEntry<>(child, r));
-                q.add(child);
+    private void writeLangString(Node node, Node p, LangString langString, TripleReader.Handler out) {
+        for (Entry<String, String> e : langString.entrySet()) {
+            if (!e.getValue().trim().isEmpty()) {
+                out.triple(Triple.create(node, p, NodeFactory.createLiteral(e.getValue().trim(), e.getKey())));
             }
         }
-
-        return l;
     }
 
+    //in depth-first order, so the output does not change between calls
     private Set<Resource> resources(List<Resource> inputList) {
-        Set<Resource> s = new HashSet<>();
+        Set<Resource> s = new LinkedHashSet<>();
+        for (Resource r : inputList) {
+            r.visit(res -> {
+                s.add(res);
+                return true;
+            });
+        }
+        return s;
+    }
 
-        Queue<Resource> q = new LinkedList<>();
-        q.addAll(inputList);
+    /**
+     * Hands the prefixes and triples of the ABox (instances and their links)
+     * to the handler without building a model.
+     * The triples are generated in parallel on the common fork join pool,
+     * partitioned by classes and properties (see {@link #partitions()}).
+     * A window of partitions is generated at once and handed over in order,
+     * so only that window is buffered. The handler is only called by the
+     * calling thread.
+     * @param out e.g. a {@link TripleWriter}
+     */
+    public void writeABox(TripleReader.Handler out) {
+        writeABoxPrefixes(out);
+
+        List<List<Resource>> partitions = partitions();
+        int window = ForkJoinPool.getCommonPoolParallelism() * 2;
+        for (int from = 0; from < partitions.size(); from += window) {
+            List<List<Triple>> generated = partitions.subList(from, Math.min(from + window, partitions.size()))
+                    .parallelStream().map(partition -> {
+                        List<Triple> triples = new ArrayList<>();
+                        TripleReader.Handler buffer = handler(triples);
+                        for (Resource r : partition) {
+                            writeABox(r, buffer);
+                        }
+                        return triples;
+                    }).collect(toList());
 
-        while (!q.isEmpty()) {
-            Resource r = q.poll();
-            s.add(r);
-            for (Resource child : r.getChildren()) {
-                q.add(child);
+            for (List<Triple> triples : generated) {
+                triples.forEach(out::triple);
             }
         }
+    }
 
-        return s;
+    //collects the triples of a partition, the prefixes are handed over before
+    private static TripleReader.Handler handler(List<Triple> triples) {
+        return new TripleReader.Handler() {
+            @Override
+            public void prefix(String prefix, String uri) {
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                triples.add(triple);
+            }
+        };
     }
 
-    public Model getABoxModel() {
-        Model m = ModelFactory.createDefaultModel();
-        m.setNsPrefix(prefix, getUriWithFragment());
-        m.setNsPrefix(instancePrefix, instanceNamespace);
-        m.setNsPrefix("rdf", RDF.getURI());
-        m.setNsPrefix("rdfs", RDFS.getURI());
-        
-        //m.add(skippedABox);
-        
-        for (List<Resource> l : Arrays.asList(rootClasses)) {
+    private void writeABoxPrefixes(TripleReader.Handler out) {
+        out.prefix(prefix, getUriWithFragment());
+        out.prefix(instancePrefix, instanceNamespace);
+        out.prefix("rdf", RDF.getURI());
+        out.prefix("rdfs", RDFS.getURI());
+    }
+
+    /**
+     * Splits the classes with instances and the properties with links
+     * into partitions of about {@link #PARTITION_SIZE} instances or links,
+     * so small ones are not a task of their own.
+     * A class or property is never split.
+     * @return
+     */
+    private List<List<Resource>> partitions() {
+        List<List<Resource>> partitions = new ArrayList<>();
+
+        List<Resource> partition = new ArrayList<>();
+        int size = 0;
+        for (List<Resource> l : Arrays.asList(rootClasses, rootProperties)) {
             for (Resource r : l) {
-                for (Resource clazz : r.descendants()) {
-                    org.apache.jena.rdf.model.Resource jenaClass = ResourceFactory.createResource(clazz.getURI());
-                    for(Resource inst : clazz.getInstances()) {
-                        createResources(new HashSet<>(Arrays.asList(inst)), jenaClass, m).get(0);
+                for (Resource desc : r.subtree()) {
+                    int work = desc.getType() == Resource.Type.Property ? desc.getLinks().size() : desc.getInstances().size();
+                    if (work == 0) {
+                        continue;
+                    }
+                    partition.add(desc);
+                    size += work;
+                    if (size >= PARTITION_SIZE) {
+                        partitions.add(partition);
+                        partition = new ArrayList<>();
+                        size = 0;
                     }
                 }
             }
         }
-        
-        for (List<Resource> l : Arrays.asList(rootProperties)) {
-            for (Resource r : l) {
-                for (Resource property : r.descendants()) {
-                    
-                    if(property.getLinks().isEmpty())
-                        continue;
-                    
-                    org.apache.jena.rdf.model.Property jenaProperty = ResourceFactory.createProperty(property.getURI());
-                    
-                    for(Link link : property.getLinks()) {
-                        
-                        org.apache.jena.rdf.model.Resource jenaInstA = ResourceFactory.createResource(link.getSource().getURI());
-                        
-                        if(link.getTarget().getType() == Resource.Type.Literal) {
-                            
-                            String literalValue = link.getTarget().getLiteral().get("");
-                            
-                            if(link.getTarget().getLiteral().containsKey("datatype")) {
-                                
-                                
-                                String datatypeURI = link.getTarget().getLiteral().get("datatype");
-                                RDFDatatype dt = TypeMapper.getInstance().getSafeTypeByName(datatypeURI);
-                                m.addLiteral(jenaInstA, jenaProperty, ResourceFactory.createTypedLiteral(literalValue, dt));
-                                
-                            } else {
-                                //untyped literal
-                                m.add(jenaInstA, jenaProperty, literalValue);
-                            }
-                            
-                        } else {
-                            org.apache.jena.rdf.model.Resource jenaInstB = ResourceFactory.createResource(link.getTarget().getURI());
-                            m.add(jenaInstA, jenaProperty, jenaInstB);
-                        }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    //the instances of a class or the links of a property
+    private void writeABox(Resource r, TripleReader.Handler out) {
+        if (r.getType() == Resource.Type.Property) {
+            writeLinks(r, out);
+        } else {
+            writeInstances(r, out);
+        }
+    }
+
+    private void writeInstances(Resource clazz, TripleReader.Handler out) {
+        if (clazz.getInstances().isEmpty()) {
+            return;
+        }
+        Node jenaClass = clazz.asNode();
+        for(Resource inst : clazz.getInstances()) {
+            writeResource(inst, jenaClass, out);
+        }
+    }
+
+    private void writeLinks(Resource property, TripleReader.Handler out) {
+        if(property.getLinks().isEmpty())
+            return;
+
+        Node jenaProperty = property.asNode();
+
+        //the links of a property mostly have the same datatype
+        String lastDatatypeURI = null;
+        RDFDatatype dt = null;
+
+        for(Link link : property.getLinks()) {
+
+            Node jenaInstA = link.getSource().asNode();
+
+            if(link.getTarget().getType() == Resource.Type.Literal) {
+
+                String literalValue = link.getTarget().getLiteral().get("");
+                String datatypeURI = link.getTarget().getLiteral().get("datatype");
+
+                if(datatypeURI != null) {
+                    if (!datatypeURI.equals(lastDatatypeURI)) {
+                        dt = TypeMapper.getInstance().getSafeTypeByName(datatypeURI);
+                        lastDatatypeURI = datatypeURI;
                     }
+                    out.triple(Triple.create(jenaInstA, jenaProperty, NodeFactory.createLiteral(literalValue, dt)));
+                } else {
+                    //untyped literal
+                    out.triple(Triple.create(jenaInstA, jenaProperty, NodeFactory.createLiteral(literalValue)));
                 }
+
+            } else {
+                Node jenaInstB = link.getTarget().asNode();
+                out.triple(Triple.create(jenaInstA, jenaProperty, jenaInstB));
             }
         }
-        
-        return m;
-    }
-    
-    public Model getTBoxABoxModel() {
-        Model tbox = getTBoxModel();
-        Model abox = getABoxModel();
-        return ModelFactory.createUnion(tbox, abox);
     }
     
     public JSONObject toJSON(int index) {
         JSONObject ontology = new JSONObject();
         ontology.put("uri", uri);
         ontology.put("prefix", prefix);
-        ontology.put("hashCode", hashCode());
+        ontology.put("id", id);
         ontology.put("index", index);
 
         for (List<Resource> tree : Arrays.asList(rootClasses, rootProperties)) {
@@ -771,9 +1055,11 @@ public class Ontology {
             JSONArray children = new JSONArray();
             root.put("children", children);
 
-            Collections.sort(tree);
+            //a sorted copy, shared ontologies are serialized by several sessions at once
+            List<Resource> sorted = new ArrayList<>(tree);
+            Collections.sort(sorted);
 
-            for (Resource res : tree) {
+            for (Resource res : sorted) {
                 children.put(res.toJSON(true, index));
             }
 
@@ -783,52 +1069,34 @@ public class Ontology {
         return ontology;
     }
 
-    public void changeResource(int hashCode, Resource changeTo, String what, String lang) {
-        Resource res = findByHashCode(hashCode);
+    public void changeResource(long id, Resource changeTo, String what, String lang) {
+        Resource res = findById(id);
         if (res != null) {
             res.change(changeTo, what, lang);
         }
     }
 
-    public void removeResource(int hashCode) {
-        Resource res = findByHashCode(hashCode);
+    public void removeResource(long id) {
+        Resource res = findById(id);
         if (res != null) {
             if (res.hasParent()) {
                 res.getParent().removeChild(res);
             } else {
                 if (res.isImported()) {
-                    this.getRoot(res.getType()).remove(res);
+                    this.removeRoot(res);
                 } else {
-                    res.getOntology().getRoot(res.getType()).remove(res);
+                    res.getOntology().removeRoot(res);
                 }
             }
         }
     }
 
-    public Resource findByHashCode(int hashCode) {
-        for (List<Resource> l : Arrays.asList(rootClasses, rootProperties)) {
-            for (Resource r : l) {
-                for (Resource desc : r.descendants()) {
-                    if (desc.hashCode() == hashCode) {
-                        return desc;
-                    }
-                }
-            }
-        }
-        return null;
+    public Resource findById(long id) {
+        return index.getById(id);
     }
 
     public Resource findClassByLocalname(String localname) {
-        for (List<Resource> l : Arrays.asList(rootClasses)) {
-            for (Resource r : l) {
-                for (Resource desc : r.descendants()) {
-                    if (desc.getLocalname().equals(localname)) {
-                        return desc;
-                    }
-                }
-            }
-        }
-        return null;
+        return index.getClassByLocalname(localname);
     }
     
     public List<Resource> listClasses() {
@@ -836,80 +1104,54 @@ public class Ontology {
         
         for (List<Resource> l : Arrays.asList(rootClasses)) {
             for (Resource r : l) {
-                for (Resource desc : r.descendants()) {
-                    result.add(desc);
-                }
+                r.visit(result::add);
             }
         }
         return result;
     }
     
     public Resource findByUri(String uri) {
-        for (List<Resource> l : Arrays.asList(rootClasses, rootProperties)) {
-            for (Resource r : l) {
-                for (Resource desc : r.descendants()) {
-                    
-                    if (desc.getURI().equals(uri)) {
-                        return desc;
-                    }
-                    
-                    for(Resource inst : desc.getInstances()) {
-                        if (inst.getURI().equals(uri)) {
-                            return inst;
-                        }
-                    }
-                    
-                    for(Link link : desc.getLinks()) {
-                        if (link.getSource().getURI().equals(uri)) {
-                            return link.getSource();
-                        }
-                        if (link.getTarget().getURI().equals(uri)) {
-                            return link.getTarget();
-                        }
-                    }
-                    
-                }
-            }
-        }
-        return null;
+        return index.getByUri(uri);
     }
     
     public Map<String, Resource> getUri2ResourceMap() {
-        Map<String, Resource> m = new HashMap<>();
-        
-        for (List<Resource> l : Arrays.asList(rootClasses, rootProperties)) {
-            for (Resource r : l) {
-                for (Resource desc : r.descendants()) {
-                    
-                    m.put(desc.getURI(), desc);
-                    
-                    for(Resource inst : desc.getInstances()) {
-                        m.put(inst.getURI(), inst);
-                    }
-                    
-                    for(Link link : desc.getLinks()) {
-                        m.put(link.getSource().getURI(), link.getSource());
-                        m.put(link.getTarget().getURI(), link.getTarget());
-                    }
+        return index.getUriMap();
+    }
+    
+    public void removeLinksHaving(Resource res) {
+        removeLinksHaving(Arrays.asList(res));
+    }
+    
+    /**
+     * Removes all links the resources are part of. It takes time of their
+     * own links, see {@link ResourceIndex#getLinkedProperties(Resource)}.
+     * @param resources
+     */
+    public void removeLinksHaving(Collection<Resource> resources) {
+        for (Resource res : resources) {
+            for (Resource prop : index.getLinkedProperties(res).toArray(new Resource[0])) {
+                for (Resource object : prop.getObjects(res).toArray(new Resource[0])) {
+                    prop.removeLink(res, object);
+                }
+                for (Resource subject : prop.getSubjects(res).toArray(new Resource[0])) {
+                    prop.removeLink(subject, res);
                 }
             }
         }
-        
-        return m;
     }
     
-    public void removeLinksHaving(Resource res) {
-        for (List<Resource> l : Arrays.asList(rootProperties)) {
-            for (Resource r : l) {
-                for (Resource prop : r.descendants()) {
-                    for(Link link : prop.getLinks().toArray(new Link[0])) {
-                        if(link.getSource().equals(res) || link.getTarget().equals(res)) {
-                            prop.getLinks().remove(link);
-                        }
-                    }
-                }
+    /**
+     * Removes the instances from their classes and all links they are
+     * part of.
+     * @param instances
+     */
+    public void removeInstances(Collection<Resource> instances) {
+        for (Resource inst : instances) {
+            if (inst.hasParent()) {
+                inst.getParent().removeInstance(inst);
             }
         }
+        removeLinksHaving(instances);
     }
     
     /**
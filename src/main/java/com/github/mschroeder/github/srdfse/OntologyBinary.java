@@ -0,0 +1,515 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Supplier;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+
+/**
+ * Compact binary form of ontologies: the resource trees, labels, comments,
+ * links and inverseOf links are written directly, without building a Jena
+ * model. All strings (URIs, localnames, language tags, labels) are stored
+ * once in a constant pool and referred to by index; numbers are written
+ * as variable length integers.
+ * <p>
+ * Every ontology and resource reachable from the given ontologies is
+ * written, e.g. also the xsd datatypes a range refers to, with its id.
+ * Shared vocabularies are written only as reference, their resources by id.
+ * <pre>
+ * magic, format version
+ * string pool: count, (length, utf-8 bytes)*
+ * ontologies: count, (vocabulary | vocabulary, id, uri, prefix, name,
+ *              fragment, instance namespace, instance prefix, prefix mapping)*
+ * resources: count, (shared, ontology, id | shared, ontology, type, id,
+ *             localname, imported, label, comment, seeAlso, isDefinedBy,
+ *             statements)*
+ * relations per resource: domain, range, children, instances, links
+ * roots per ontology: root classes, root properties, inverseOf
+ * </pre>
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OntologyBinary {
+
+    //"sRDF"
+    private static final int MAGIC = 0x73524446;
+    //2: shared vocabularies
+    private static final int FORMAT_VERSION = 2;
+
+    public static final String EXTENSION = "srdfse";
+
+    private static final int STMT_URI = 0;
+    private static final int STMT_LANG = 1;
+    private static final int STMT_TYPED = 2;
+
+    private static final Resource.Type[] TYPES = Resource.Type.values();
+
+    //==========================================================================
+
+    /**
+     * Writes the ontologies and everything they refer to.
+     * @param ontologies the ones which are read back first in this order
+     * @param os
+     * @throws IOException
+     */
+    public static void write(List<Ontology> ontologies, OutputStream os) throws IOException {
+        new Writer().write(ontologies, os);
+    }
+
+    private static class Writer {
+
+        private Map<String, Integer> pool = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+
+        private Map<Ontology, Integer> onto2pos = new IdentityHashMap<>();
+        private List<Ontology> ontos = new ArrayList<>();
+        private Map<Resource, Integer> res2pos = new IdentityHashMap<>();
+        private List<Resource> resources = new ArrayList<>();
+        private Deque<Resource> queue = new ArrayDeque<>();
+
+        private void write(List<Ontology> ontologies, OutputStream os) throws IOException {
+            ontologies.forEach(this::position);
+            collect();
+
+            //the body is written first to fill the pool
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(baos);
+
+            writeVarInt(body, ontos.size());
+            for (Ontology onto : ontos) {
+                writeString(body, onto.getVocabulary());
+                if (onto.isShared()) {
+                    continue;
+                }
+                writeVarLong(body, onto.getId());
+                writeString(body, onto.getUri());
+                writeString(body, onto.getPrefix());
+                writeString(body, onto.getName());
+                writeString(body, onto.getFragment());
+                writeString(body, onto.getInstanceNamespace());
+                writeString(body, onto.getInstancePrefix());
+                Map<String, String> prefixes = onto.getPrefixMapping().getNsPrefixMap();
+                writeVarInt(body, prefixes.size());
+                for (Entry<String, String> e : prefixes.entrySet()) {
+                    writeString(body, e.getKey());
+                    writeString(body, e.getValue());
+                }
+            }
+
+            writeVarInt(body, resources.size());
+            for (Resource res : resources) {
+                body.writeBoolean(res.isShared());
+                if (res.isShared()) {
+                    writeVarInt(body, onto2pos.get(res.index.getOntology()));
+                    writeVarLong(body, res.getId());
+                    continue;
+                }
+                writeVarInt(body, onto2pos.get(res.getOntology()));
+                body.writeByte(res.getType().ordinal());
+                writeVarLong(body, res.getId());
+                writeString(body, res.getLocalname());
+                body.writeBoolean(res.isImported());
+                writeLangString(body, res.hasLabel() ? res.getLabel() : null);
+                writeLangString(body, res.hasComment() ? res.getComment() : null);
+                writeString(body, res.getSeeAlso());
+                writeString(body, res.getIsDefinedBy());
+                writeStatements(body, res.getAdditionalDomainRangeStatements());
+            }
+
+            for (Resource res : resources) {
+                if (res.isShared()) {
+                    continue;
+                }
+                writeRef(body, res.getDomain());
+                writeRef(body, res.getRange());
+                writeRefs(body, res.getChildren());
+                writeRefs(body, res.getInstances());
+                writeVarInt(body, res.getLinks().size());
+                for (Link link : res.getLinks()) {
+                    writeRef(body, link.getSource());
+                    writeRef(body, link.getTarget());
+                }
+            }
+
+            for (Ontology onto : ontos) {
+                if (onto.isShared()) {
+                    continue;
+                }
+                writeRefs(body, onto.getRootClasses());
+                writeRefs(body, onto.getRootProperties());
+                writeVarInt(body, onto.getInverseOfLinks().size());
+                for (Link link : onto.getInverseOfLinks()) {
+                    writeRef(body, link.getSource());
+                    writeRef(body, link.getTarget());
+                }
+            }
+            body.flush();
+
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            writeVarInt(dos, FORMAT_VERSION);
+            writeVarInt(dos, strings.size());
+            for (String str : strings) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(dos, bytes.length);
+                dos.write(bytes);
+            }
+            baos.writeTo(dos);
+            dos.flush();
+        }
+
+        //ontologies are appended while resources are collected
+        private void collect() {
+            for (int i = 0; i < ontos.size() || !queue.isEmpty(); ) {
+                if (queue.isEmpty()) {
+                    Ontology onto = ontos.get(i++);
+                    if (onto.isShared()) {
+                        continue;
+                    }
+                    onto.getRootClasses().forEach(this::enqueue);
+                    onto.getRootProperties().forEach(this::enqueue);
+                    for (Link link : onto.getInverseOfLinks()) {
+                        enqueue(link.getSource());
+                        enqueue(link.getTarget());
+                    }
+                    continue;
+                }
+
+                Resource res = queue.poll();
+                if (res.isShared()) {
+                    position(res.index.getOntology());
+                    continue;
+                }
+                position(res.getOntology());
+                res.getChildren().forEach(this::enqueue);
+                res.getInstances().forEach(this::enqueue);
+                enqueue(res.getDomain());
+                enqueue(res.getRange());
+                for (Link link : res.getLinks()) {
+                    enqueue(link.getSource());
+                    enqueue(link.getTarget());
+                }
+            }
+        }
+
+        private void position(Ontology onto) {
+            if (!onto2pos.containsKey(onto)) {
+                onto2pos.put(onto, ontos.size());
+                ontos.add(onto);
+            }
+        }
+
+        private void enqueue(Resource res) {
+            if (res != null && !res2pos.containsKey(res)) {
+                res2pos.put(res, resources.size());
+                resources.add(res);
+                queue.add(res);
+            }
+        }
+
+        //0 is null
+        private void writeString(DataOutputStream dos, String str) throws IOException {
+            if (str == null) {
+                writeVarInt(dos, 0);
+                return;
+            }
+            Integer index = pool.get(str);
+            if (index == null) {
+                strings.add(str);
+                index = strings.size();
+                pool.put(str, index);
+            }
+            writeVarInt(dos, index);
+        }
+
+        //0 is null
+        private void writeRef(DataOutputStream dos, Resource res) throws IOException {
+            writeVarInt(dos, res == null ? 0 : res2pos.get(res) + 1);
+        }
+
+        private void writeRefs(DataOutputStream dos, List<Resource> l) throws IOException {
+            writeVarInt(dos, l.size());
+            for (Resource res : l) {
+                writeRef(dos, res);
+            }
+        }
+
+        //null is written as empty
+        private void writeLangString(DataOutputStream dos, LangString langString) throws IOException {
+            if (langString == null) {
+                writeVarInt(dos, 0);
+                return;
+            }
+            writeVarInt(dos, langString.size());
+            for (Entry<String, String> e : langString.entrySet()) {
+                writeString(dos, e.getKey());
+                writeString(dos, e.getValue());
+            }
+        }
+
+        private void writeStatements(DataOutputStream dos, List<Statement> stmts) throws IOException {
+            int count = 0;
+            for (Statement stmt : stmts) {
+                if (!stmt.getObject().isAnon()) {
+                    count++;
+                }
+            }
+            writeVarInt(dos, count);
+
+            for (Statement stmt : stmts) {
+                RDFNode object = stmt.getObject();
+                if (object.isAnon()) {
+                    continue;
+                }
+                writeString(dos, stmt.getPredicate().getURI());
+                if (object.isURIResource()) {
+                    dos.writeByte(STMT_URI);
+                    writeString(dos, object.asResource().getURI());
+                } else {
+                    Literal lit = object.asLiteral();
+                    if (lit.getLanguage().isEmpty() && lit.getDatatypeURI() != null) {
+                        dos.writeByte(STMT_TYPED);
+                        writeString(dos, lit.getLexicalForm());
+                        writeString(dos, lit.getDatatypeURI());
+                    } else {
+                        dos.writeByte(STMT_LANG);
+                        writeString(dos, lit.getLexicalForm());
+                        writeString(dos, lit.getLanguage());
+                    }
+                }
+            }
+        }
+    }
+
+    //==========================================================================
+
+    /**
+     * Reads the ontologies with all resources in their trees.
+     * The resources are not registered in any {@link IdTable} yet.
+     * @param is
+     * @param keepIds false if the ontologies are opened in another session,
+     * they get new ids when they are registered
+     * @return the ontologies which were given when writing, followed by
+     * the ones they refer to
+     * @throws IOException
+     */
+    public static List<Ontology> read(InputStream is, boolean keepIds) throws IOException {
+        DataInputStream dis = new DataInputStream(is instanceof BufferedInputStream ? is : new BufferedInputStream(is));
+
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("not a binary ontology");
+        }
+        int formatVersion = readVarInt(dis);
+        if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + formatVersion);
+        }
+        boolean withShared = formatVersion >= 2;
+
+        String[] strings = new String[readVarInt(dis) + 1];
+        for (int i = 1; i < strings.length; i++) {
+            byte[] bytes = new byte[readVarInt(dis)];
+            dis.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<Ontology> ontos = new ArrayList<>();
+        int ontoCount = readVarInt(dis);
+        for (int i = 0; i < ontoCount; i++) {
+            String vocabulary = withShared ? strings[readVarInt(dis)] : null;
+            if (vocabulary != null) {
+                //an empty one if an imported file is lost, its resources are missing
+                Ontology shared = VocabularyStore.get(vocabulary);
+                ontos.add(shared != null ? shared : new Ontology());
+                continue;
+            }
+            Ontology onto = new Ontology();
+            long id = readVarLong(dis);
+            onto.setId(keepIds ? id : 0);
+            onto.setUri(strings[readVarInt(dis)]);
+            onto.setPrefix(strings[readVarInt(dis)]);
+            onto.setName(strings[readVarInt(dis)]);
+            onto.setFragment(strings[readVarInt(dis)]);
+            onto.setInstanceNamespace(strings[readVarInt(dis)]);
+            onto.setInstancePrefix(strings[readVarInt(dis)]);
+            int prefixCount = readVarInt(dis);
+            for (int j = 0; j < prefixCount; j++) {
+                onto.getPrefixMapping().setNsPrefix(strings[readVarInt(dis)], strings[readVarInt(dis)]);
+            }
+            ontos.add(onto);
+        }
+
+        Resource[] resources = new Resource[readVarInt(dis) + 1];
+        boolean[] shared = new boolean[resources.length];
+        for (int i = 1; i < resources.length; i++) {
+            shared[i] = withShared && dis.readBoolean();
+            if (shared[i]) {
+                //null if the vocabulary does not have it anymore
+                Ontology onto = ontos.get(readVarInt(dis));
+                resources[i] = onto.getIndex().getById(readVarLong(dis));
+                continue;
+            }
+            Resource res = new Resource(ontos.get(readVarInt(dis)), TYPES[dis.readByte()]);
+            long id = readVarLong(dis);
+            res.setId(keepIds ? id : 0);
+            res.setLocalname(strings[readVarInt(dis)]);
+            res.setImported(dis.readBoolean());
+            readLangString(dis, strings, res::getLabel);
+            readLangString(dis, strings, res::getComment);
+            res.setSeeAlso(strings[readVarInt(dis)]);
+            res.setIsDefinedBy(strings[readVarInt(dis)]);
+            readStatements(dis, strings, res);
+            resources[i] = res;
+        }
+
+        //links attach their ends, so they are added when the trees are indexed
+        int[][] links = new int[resources.length][];
+        for (int i = 1; i < resources.length; i++) {
+            if (shared[i]) {
+                continue;
+            }
+            Resource res = resources[i];
+            Resource domain = resources[readVarInt(dis)];
+            if (domain != null) {
+                res.setDomain(domain);
+            }
+            Resource range = resources[readVarInt(dis)];
+            if (range != null) {
+                res.setRange(range);
+            }
+            int childCount = readVarInt(dis);
+            for (int j = 0; j < childCount; j++) {
+                res.addChild(resources[readVarInt(dis)]);
+            }
+            int instanceCount = readVarInt(dis);
+            for (int j = 0; j < instanceCount; j++) {
+                res.addInstance(resources[readVarInt(dis)]);
+            }
+            int linkCount = readVarInt(dis);
+            if (linkCount > 0) {
+                links[i] = new int[linkCount * 2];
+                for (int j = 0; j < links[i].length; j++) {
+                    links[i][j] = readVarInt(dis);
+                }
+            }
+        }
+
+        for (Ontology onto : ontos) {
+            if (onto.isShared()) {
+                continue;
+            }
+            int rootClassCount = readVarInt(dis);
+            for (int j = 0; j < rootClassCount; j++) {
+                onto.addRoot(resources[readVarInt(dis)]);
+            }
+            int rootPropertyCount = readVarInt(dis);
+            for (int j = 0; j < rootPropertyCount; j++) {
+                onto.addRoot(resources[readVarInt(dis)]);
+            }
+            int inverseOfCount = readVarInt(dis);
+            for (int j = 0; j < inverseOfCount; j++) {
+                onto.addInverseOf(resources[readVarInt(dis)], resources[readVarInt(dis)]);
+            }
+        }
+
+        for (int i = 1; i < resources.length; i++) {
+            if (links[i] != null) {
+                for (int j = 0; j < links[i].length; j += 2) {
+                    Resource source = resources[links[i][j]];
+                    Resource target = resources[links[i][j + 1]];
+                    if (source != null && target != null) {
+                        resources[i].addLink(source, target);
+                    }
+                }
+            }
+        }
+
+        return ontos;
+    }
+
+    //the lang string is only created if there are entries
+    private static void readLangString(DataInputStream dis, String[] strings, Supplier<LangString> langString) throws IOException {
+        int count = readVarInt(dis);
+        for (int i = 0; i < count; i++) {
+            langString.get().put(strings[readVarInt(dis)], strings[readVarInt(dis)]);
+        }
+    }
+
+    private static void readStatements(DataInputStream dis, String[] strings, Resource res) throws IOException {
+        int count = readVarInt(dis);
+        if (count == 0) {
+            return;
+        }
+
+        org.apache.jena.rdf.model.Resource subject = ResourceFactory.createResource(res.getURI());
+        for (int i = 0; i < count; i++) {
+            String predicate = strings[readVarInt(dis)];
+            int kind = dis.readByte();
+            String value = strings[readVarInt(dis)];
+            String extra = kind == STMT_URI ? null : strings[readVarInt(dis)];
+
+            RDFNode object;
+            switch (kind) {
+                case STMT_URI:
+                    object = ResourceFactory.createResource(value);
+                    break;
+                case STMT_TYPED:
+                    object = ResourceFactory.createTypedLiteral(value, TypeMapper.getInstance().getSafeTypeByName(extra));
+                    break;
+                default:
+                    object = ResourceFactory.createLangLiteral(value, extra);
+            }
+            res.addAdditionalDomainRangeStatement(
+                    ResourceFactory.createStatement(subject, ResourceFactory.createProperty(predicate), object)
+            );
+        }
+    }
+
+    //==========================================================================
+
+    private static void writeVarInt(DataOutputStream dos, int value) throws IOException {
+        writeVarLong(dos, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(DataOutputStream dos, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            dos.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dos.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInputStream dis) throws IOException {
+        return (int) readVarLong(dis);
+    }
+
+    private static long readVarLong(DataInputStream dis) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = dis.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable length integer");
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.json.JSONObject;
+
+/**
+ * Imported files shared by all web sessions, keyed by a hash of the file
+ * name and content. A file which was imported before is not parsed again,
+ * the sessions refer to the same read-only ontology (like the presets of
+ * the {@link VocabularyStore}).
+ * The least recently used ontologies are removed when the cache holds more
+ * than the maximum number of resources; sessions which imported them keep
+ * their reference. If a directory is configured, every ontology is also
+ * written there in the {@link OntologyBinary} form, so stored sessions can
+ * refer to it after a restart and it is read again without parsing.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OntologyCache {
+
+    public static final String KEY_PREFIX = "sha256:";
+
+    //above the ranges of the VocabularyStore
+    private static final long FIRST_ID = 1L << 48;
+    private static final int SLOT_BITS = 20;
+    private static final int ID_BITS = 28;
+
+    private static File directory;
+    private static long maxResources = 1000000;
+
+    //access order: the eldest is the least recently used
+    private static final LinkedHashMap<String, Ontology> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long resources;
+    private static final Set<Long> slots = new HashSet<>();
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    /**
+     * @param directory where the ontologies are written, null if they are
+     * only kept in memory
+     * @param maxResources resources of all cached ontologies
+     */
+    public static synchronized void configure(File directory, long maxResources) {
+        OntologyCache.directory = directory;
+        OntologyCache.maxResources = maxResources;
+        if (directory != null) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the shared ontology of the file, it is parsed only if it is
+     * not cached.
+     * @param filename the name decides the syntax and the prefix
+     * @param bytes the content of the file
+     * @return
+     */
+    public static Ontology load(String filename, byte[] bytes) {
+        String key = key(filename, bytes);
+
+        synchronized (OntologyCache.class) {
+            Ontology onto = get(key);
+            if (onto != null) {
+                hits++;
+                return onto;
+            }
+            misses++;
+        }
+
+        //parsed without holding the cache
+        Ontology onto = Ontology.loadTTL(filename, new ByteArrayInputStream(bytes));
+
+        synchronized (OntologyCache.class) {
+            //someone else was faster
+            Ontology cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+
+            IdTable ids = new IdTable();
+            ids.reserve(FIRST_ID + (slot(key) << ID_BITS));
+            ids.register(onto);
+            write(key, onto);
+            onto.setVocabulary(key);
+
+            put(key, onto);
+            return onto;
+        }
+    }
+
+    /**
+     * Returns the cached ontology, it is read from the directory if it was
+     * removed from memory.
+     * @param key
+     * @return null if it is unknown
+     */
+    public static synchronized Ontology get(String key) {
+        Ontology onto = cache.get(key);
+        if (onto != null) {
+            return onto;
+        }
+
+        File file = file(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            onto = OntologyBinary.read(is, true).get(0);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        //the ids are kept, the range stays reserved
+        slots.add((onto.getId() - FIRST_ID) >> ID_BITS);
+        new IdTable().register(onto);
+        onto.setVocabulary(key);
+
+        put(key, onto);
+        return onto;
+    }
+
+    private static void put(String key, Ontology onto) {
+        cache.put(key, onto);
+        resources += onto.getIndex().size();
+
+        //the new one stays
+        Iterator<Entry<String, Ontology>> iter = cache.entrySet().iterator();
+        while (resources > maxResources && cache.size() > 1) {
+            Ontology eldest = iter.next().getValue();
+            iter.remove();
+            resources -= eldest.getIndex().size();
+            evictions++;
+        }
+    }
+
+    private static void write(String key, Ontology onto) {
+        File file = file(key);
+        if (file == null || file.exists()) {
+            return;
+        }
+        try {
+            File tmp = new File(directory, file.getName() + ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+                onto.saveBinary(os);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static File file(String key) {
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, key.substring(KEY_PREFIX.length()) + "." + OntologyBinary.EXTENSION);
+    }
+
+    private static String key(String filename, byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        digest.update(filename.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(bytes);
+
+        StringBuilder sb = new StringBuilder(KEY_PREFIX);
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    //derived from the key, so it is mostly the same after a restart
+    private static long slot(String key) {
+        long mask = (1L << SLOT_BITS) - 1;
+        long slot = Long.parseLong(key.substring(KEY_PREFIX.length(), KEY_PREFIX.length() + 8), 16) & mask;
+        while (!slots.add(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public static synchronized JSONObject getMetrics() {
+        JSONObject json = new JSONObject();
+        json.put("hits", hits);
+        json.put("misses", misses);
+        json.put("evictions", evictions);
+        json.put("ontologies", cache.size());
+        json.put("resources", resources);
+        return json;
+    }
+
+}
@@ -0,0 +1,358 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The editing state of one web session without any Swing component:
+ * the user ontology, the imported ones and the rules how resources are
+ * dragged, dropped and removed (the same as in the editor GUI).
+ * It is not thread-safe; the server changes it only from the actor of
+ * the room.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OntologySession {
+
+    //the trees shown by the web client
+    public enum TreeType {
+        Domain,
+        Property,
+        Range
+    }
+
+    private List<Ontology> ontologies;
+
+    //ids of all ontologies and resources in this session
+    private IdTable idTable;
+
+    //increased with every state change sent to the web clients
+    private long version;
+
+    //language of labels created by the session
+    private String labelLanguage;
+
+    public OntologySession() {
+        ontologies = new ArrayList<>();
+        idTable = new IdTable();
+        labelLanguage = "";
+
+        //an empty one which is created by the user
+        loadUserOntology(new Ontology());
+    }
+
+    public Ontology getUserOntology() {
+        return ontologies.get(0);
+    }
+
+    public List<Ontology> getOntologies() {
+        return Collections.unmodifiableList(ontologies);
+    }
+
+    public IdTable getIdTable() {
+        return idTable;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long nextVersion() {
+        return ++version;
+    }
+
+    //e.g. when restored from a snapshot
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getLabelLanguage() {
+        return labelLanguage;
+    }
+
+    public void setLabelLanguage(String labelLanguage) {
+        this.labelLanguage = labelLanguage;
+    }
+
+    public void loadUserOntology(Ontology onto) {
+        //the one which is created by the user
+        ontologies.forEach(idTable::unregister);
+        ontologies.clear();
+        idTable.register(onto);
+        ontologies.add(onto);
+    }
+
+    //the preset is shared with all other sessions
+    public Ontology importOntologyFromResource(String resourcePath) {
+        return importOntology(VocabularyStore.get(resourcePath));
+    }
+
+    /**
+     * Adds the ontology if there is none with the same prefix.
+     * @param onto
+     * @return the added one or the one with the same prefix
+     */
+    public Ontology importOntology(Ontology onto) {
+        //no duplicate
+        for (Ontology other : ontologies) {
+            if (other.getPrefix().equals(onto.getPrefix())) {
+                return other;
+            }
+        }
+
+        idTable.register(onto);
+        ontologies.add(onto);
+        return onto;
+    }
+
+    public void removeOntology(Ontology onto) {
+        //the user ontology stays
+        if (onto == getUserOntology()) {
+            return;
+        }
+        ontologies.remove(onto);
+        idTable.unregister(onto);
+    }
+
+    public Object getObjectById(long id) {
+        return idTable.get(id);
+    }
+
+    public void removeResource(Resource res) {
+        if (res.hasParent()) {
+            res.getParent().removeChild(res);
+        } else {
+            Ontology onto = res.isImported() ? getUserOntology() : res.getOntology();
+            onto.removeRoot(res);
+        }
+    }
+
+    public void dragAndDrop(String srcTreeType, long srcId, String dstTreeType, long dstId) {
+        Object src = getObjectById(srcId);
+        if (src == null) {
+            throw new RuntimeException("No src object found for id " + srcId);
+        }
+
+        Object dst = getObjectById(dstId);
+        if (dst == null) {
+            throw new RuntimeException("No dst object found for id " + dstId);
+        }
+
+        dragAndDrop(TreeType.valueOf(srcTreeType), src, TreeType.valueOf(dstTreeType), dst);
+    }
+
+    //src and trg can be Resource or Ontology instance
+    public void dragAndDrop(TreeType sourceTree, Object src, TreeType targetTree, Object trg) {
+        //property creation
+        if (sourceTree == TreeType.Domain && targetTree == TreeType.Range
+                && src instanceof Resource && trg instanceof Resource) {
+            Resource domain = (Resource) src;
+            Resource range = (Resource) trg;
+
+            Resource property = new Resource(getUserOntology(), Resource.Type.Property);
+            property.setLocalname("has" + range.getLocalname());
+            property.getLabel().put(labelLanguage, "has " + range.getLocalname());
+
+            property.setDomain(domain);
+            property.setRange(range);
+
+            getUserOntology().addRoot(property);
+            return;
+        }
+
+        //set domain
+        if (sourceTree == TreeType.Domain && targetTree == TreeType.Property
+                && src instanceof Resource && trg instanceof Resource) {
+            Resource domain = (Resource) src;
+            Resource property = (Resource) trg;
+            if (property.getOntology() == getUserOntology()) {
+                property.setDomain(domain);
+            }
+        }
+
+        //set range
+        if (sourceTree == TreeType.Range && targetTree == TreeType.Property
+                && src instanceof Resource && trg instanceof Resource) {
+            Resource range = (Resource) src;
+            Resource property = (Resource) trg;
+            if (property.getOntology() == getUserOntology()) {
+                property.setRange(range);
+            }
+        }
+
+        if (src == trg || src instanceof Ontology) {
+            return;
+        }
+
+        Resource srcR = (Resource) src;
+
+        //resource -> ontology (maybe import)
+        //target can only be user ontology
+        if (trg instanceof Ontology && trg == getUserOntology() && sourceTree == targetTree) {
+            Ontology trgO = (Ontology) trg;
+            boolean sameOnto = trgO == srcR.getOntology();
+
+            if (sameOnto) {
+                removeResource(srcR);
+            } else {
+                //it's an import (copy resource)
+                srcR = srcR.copyOnlyRef();
+            }
+
+            trgO.addRoot(srcR);
+
+        } //target is a resource
+        else if (trg instanceof Resource && !((Resource) trg).isShared()
+                && (((Resource) trg).getOntology() == getUserOntology() || ((Resource) trg).isImported())
+                && sourceTree == targetTree) {
+            Resource trgR = (Resource) trg;
+
+            //a shared resource stays where it is
+            if (srcR.isShared()) {
+                srcR = srcR.copyOnlyRef();
+            } else {
+                removeResource(srcR);
+            }
+
+            trgR.addChild(srcR);
+        }
+    }
+
+    /**
+     * Applies an edit message of the web client.
+     * The same messages are written to the edit log of a session, so
+     * replaying them in order restores the state (including the ids).
+     * @param edit the message with its method and parameters
+     * @return the resource which was created or changed, otherwise null
+     */
+    public Resource apply(JSONObject edit) {
+        String method = edit.getString("method");
+        switch (method) {
+            case "uri":
+                getUserOntology().setUri(edit.getString("value"));
+                return null;
+
+            case "prefix":
+                getUserOntology().setPrefix(edit.getString("value"));
+                return null;
+
+            case "createResource":
+                return createResource(edit.getJSONObject("resource"));
+
+            case "changed": {
+                JSONObject resObj = edit.getJSONObject("resource");
+                return changeResource(resObj.getLong("id"), resObj, edit.getString("what"), edit.getString("lang"));
+            }
+
+            case "removeResource": {
+                JSONObject resObj = edit.getJSONObject("resource");
+                if (resObj.has("id")) {
+                    remove(resObj.getLong("id"));
+                }
+                return null;
+            }
+
+            case "dragAndDrop": {
+                dragAndDrop(
+                        edit.getString("srcTreeType"), edit.getLong("srcId"),
+                        edit.getString("dstTreeType"), edit.getLong("dstId")
+                );
+                //domain or range of a property could be set
+                Object dst = getObjectById(edit.getLong("dstId"));
+                return dst instanceof Resource ? (Resource) dst : null;
+            }
+
+            case "reset":
+                return resetResource(edit.getLong("id"), edit.getString("what"));
+
+            case "removeInstances": {
+                JSONArray ids = edit.getJSONArray("ids");
+                List<Resource> instances = new ArrayList<>();
+                for (int i = 0; i < ids.length(); i++) {
+                    Object obj = getObjectById(ids.getLong(i));
+                    if (obj instanceof Resource && ((Resource) obj).getType() == Resource.Type.Instance) {
+                        instances.add((Resource) obj);
+                    }
+                }
+                removeInstances(instances);
+                return null;
+            }
+
+            case "importPreset":
+                importOntologyFromResource(edit.getString("preset"));
+                return null;
+
+            default:
+                throw new IllegalArgumentException("unknown edit " + method);
+        }
+    }
+
+    public Resource createResource(JSONObject resObj) {
+        Resource resource = Resource.fromJSON(getUserOntology(), resObj);
+
+        if (resource.getType() == Resource.Type.Class || resource.getType() == Resource.Type.Property) {
+            getUserOntology().addRoot(resource);
+        }
+
+        return resource;
+    }
+
+    public Resource changeResource(long id, JSONObject resObj, String what, String lang) {
+        Resource res = getUserOntology().findById(id);
+        if (res != null) {
+            res.change(Resource.fromJSON(getUserOntology(), resObj), what, lang);
+        }
+        return res;
+    }
+
+    //removes an imported ontology or a resource of the user ontology
+    public void remove(long id) {
+        Object obj = getObjectById(id);
+
+        if (obj instanceof Ontology) {
+            removeOntology((Ontology) obj);
+        } else if (obj instanceof Resource) {
+            getUserOntology().removeResource(id);
+        }
+    }
+
+    //with all their links, in time of their own links
+    public void removeInstances(Collection<Resource> instances) {
+        getUserOntology().removeInstances(instances);
+    }
+
+    public Resource resetResource(long id, String what) {
+        Resource res = getUserOntology().findById(id);
+        if (res == null || res.getType() != Resource.Type.Property) {
+            return null;
+        }
+
+        switch (what) {
+            case "Domain": res.setDomain(null); break;
+            case "Range": res.setRange(null); break;
+        }
+        return res;
+    }
+
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+
+        JSONArray ontoArray = new JSONArray();
+        int index = 0;
+        for (Ontology ontology : ontologies) {
+            JSONObject onto = ontology.toJSON(index);
+            onto.put("isUser", index == 0);
+            onto.put("index", index++);
+            ontoArray.put(onto);
+        }
+        json.put("ontologies", ontoArray);
+        json.put("version", version);
+
+        return json;
+    }
+
+}
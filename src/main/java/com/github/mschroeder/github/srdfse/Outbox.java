@@ -0,0 +1,258 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.json.JSONObject;
+
+/**
+ * Bounded queue of outgoing frames for one websocket session.
+ * Frames are written asynchronously one after another, so the thread
+ * which handles a message never waits for a slow client.
+ * When a client falls behind, frames superseded by a newer one are
+ * removed: an {@code init} contains all earlier {@code init} and
+ * {@code patch} frames, an {@code ontology} frame the earlier ones.
+ * If the queue is still full, the oldest patches are dropped; the client
+ * notices the version gap and asks for a snapshot. If there is no patch to
+ * drop, a new patch is dropped as well, but a client which would lose any
+ * other frame (e.g. an {@code init}) is disconnected. A client which does not
+ * take any frame for too long is disconnected, this is checked when a
+ * frame is offered and by {@link #checkProgress()}.
+ * Frames are written in a loop: a write which completes at once is
+ * continued by the thread which started it, so the stack does not grow.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class Outbox implements WriteCallback {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final long DEFAULT_MAX_BEHIND_MILLIS = 30 * 1000;
+
+    private static class Frame {
+
+        private String method;
+        private String text;
+
+        public Frame(String method, String text) {
+            this.method = method;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Counters shared by all outboxes of a server.
+     */
+    public static class Metrics {
+
+        private AtomicLong sent = new AtomicLong();
+        private AtomicLong coalesced = new AtomicLong();
+        private AtomicLong dropped = new AtomicLong();
+        private AtomicLong disconnected = new AtomicLong();
+
+        public long getSent() {
+            return sent.get();
+        }
+
+        public long getCoalesced() {
+            return coalesced.get();
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public long getDisconnected() {
+            return disconnected.get();
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("sent", getSent());
+            json.put("coalesced", getCoalesced());
+            json.put("dropped", getDropped());
+            json.put("disconnected", getDisconnected());
+            return json;
+        }
+    }
+
+    private Session session;
+    private Metrics metrics;
+    private int capacity;
+    private long maxBehindMillis;
+
+    private ArrayDeque<Frame> queue;
+    //a frame is handed to jetty and not yet confirmed
+    private boolean writing;
+    //a thread runs the write loop, and the current write completed meanwhile
+    private boolean draining;
+    private boolean completed;
+    private long lastProgress;
+    private boolean closed;
+
+    public Outbox(Session session, Metrics metrics) {
+        this(session, metrics, DEFAULT_CAPACITY, DEFAULT_MAX_BEHIND_MILLIS);
+    }
+
+    public Outbox(Session session, Metrics metrics, int capacity, long maxBehindMillis) {
+        this.session = session;
+        this.metrics = metrics;
+        this.capacity = capacity;
+        this.maxBehindMillis = maxBehindMillis;
+        this.queue = new ArrayDeque<>();
+        this.lastProgress = System.currentTimeMillis();
+    }
+
+    /**
+     * Queues the frame and returns immediately.
+     * @param method the method of the message, used to find superseded frames
+     * @param text the encoded message
+     */
+    public void offer(String method, String text) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            if (writing && now - lastProgress > maxBehindMillis) {
+                close();
+                return;
+            }
+
+            coalesce(method);
+
+            if (queue.size() >= capacity) {
+                dropOldest("patch");
+            }
+            if (queue.size() >= capacity) {
+                //a missing patch is noticed by the client, any other frame
+                //is not: the client has to connect again to resync
+                if (method.equals("patch")) {
+                    metrics.dropped.incrementAndGet();
+                } else {
+                    close();
+                }
+                return;
+            }
+
+            queue.add(new Frame(method, text));
+
+            if (writing) {
+                return;
+            }
+            writing = true;
+            lastProgress = now;
+        }
+        writeNext();
+    }
+
+    private void coalesce(String method) {
+        boolean snapshot = method.equals("init");
+        boolean header = method.equals("ontology");
+        if (!snapshot && !header) {
+            return;
+        }
+
+        Iterator<Frame> iter = queue.iterator();
+        while (iter.hasNext()) {
+            String queued = iter.next().method;
+            if (queued.equals(method) || (snapshot && queued.equals("patch"))) {
+                iter.remove();
+                metrics.coalesced.incrementAndGet();
+            }
+        }
+    }
+
+    private void dropOldest(String method) {
+        Iterator<Frame> iter = queue.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().method.equals(method)) {
+                iter.remove();
+                metrics.dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void writeNext() {
+        synchronized (this) {
+            if (draining) {
+                //called back within sendString, the loop below continues
+                completed = true;
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                frame = queue.poll();
+                if (frame == null || closed) {
+                    writing = false;
+                    draining = false;
+                    return;
+                }
+                completed = false;
+            }
+            session.getRemote().sendString(frame.text, this);
+            synchronized (this) {
+                if (!completed) {
+                    //the callback comes later and starts the loop again
+                    draining = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void writeSuccess() {
+        metrics.sent.incrementAndGet();
+        synchronized (this) {
+            lastProgress = System.currentTimeMillis();
+        }
+        writeNext();
+    }
+
+    @Override
+    public void writeFailed(Throwable x) {
+        if (Server.DEBUG) {
+            System.err.println("write failed: " + x.getMessage());
+        }
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            writing = false;
+        }
+        session.close();
+    }
+
+    /**
+     * Disconnects the client if a frame is not confirmed for too long;
+     * called periodically, also when nothing is offered anymore.
+     */
+    public synchronized void checkProgress() {
+        if (!closed && writing && System.currentTimeMillis() - lastProgress > maxBehindMillis) {
+            close();
+        }
+    }
+
+    //the client is behind for too long
+    private void close() {
+        closed = true;
+        queue.clear();
+        metrics.disconnected.incrementAndGet();
+        session.close(1008, "too slow");
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+}
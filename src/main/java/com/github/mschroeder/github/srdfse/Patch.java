@@ -0,0 +1,206 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collects the changes of one mutation so that only the changed nodes
+ * are sent to the clients instead of the whole state.
+ * Structural changes are recorded as {@link IdTable.Listener}, attribute
+ * changes have to be reported with {@link #changed(Resource)}.
+ * Several changes of the same resource are merged, the JSON is created
+ * with the final state when the patch is sent.
+ * The clients embed parent, domain and range in a resource, so the
+ * children of a changed resource and the properties referring to it are
+ * sent again as well.
+ *
+ * <ul>
+ * <li>upsert: a resource with its subtree (attached) or without (changed),
+ * the client inserts it below its parent or updates it</li>
+ * <li>reparent: the resource moved, the client removes it and inserts it
+ * with its subtree below the new parent</li>
+ * <li>remove: the resource with its subtree is removed</li>
+ * <li>addOntology, removeOntology: an imported ontology</li>
+ * </ul>
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class Patch implements IdTable.Listener {
+
+    private enum Kind {
+        Changed,
+        Attached,
+        Reparent,
+        Remove
+    }
+
+    private Map<Resource, Kind> resources;
+
+    //true: added, false: removed
+    private Map<Ontology, Boolean> ontologies;
+
+    public Patch() {
+        resources = new LinkedHashMap<>();
+        ontologies = new LinkedHashMap<>();
+    }
+
+    /**
+     * Reports that a label, comment, localname, domain or range changed.
+     * @param res
+     */
+    public void changed(Resource res) {
+        if (isShown(res)) {
+            resources.putIfAbsent(res, Kind.Changed);
+        }
+    }
+
+    @Override
+    public void attached(Resource res) {
+        if (!isShown(res)) {
+            return;
+        }
+        Kind prev = resources.remove(res);
+        //moved to the end, a new parent could be attached in the same patch
+        resources.put(res, prev == Kind.Remove || prev == Kind.Reparent ? Kind.Reparent : Kind.Attached);
+    }
+
+    @Override
+    public void detached(Resource res) {
+        if (isShown(res)) {
+            resources.put(res, Kind.Remove);
+        }
+    }
+
+    @Override
+    public void ontologyRegistered(Ontology onto) {
+        if (ontologies.remove(onto) == null) {
+            ontologies.put(onto, true);
+        }
+    }
+
+    @Override
+    public void ontologyUnregistered(Ontology onto) {
+        if (ontologies.remove(onto) == null) {
+            ontologies.put(onto, false);
+        }
+    }
+
+    //instances and literals are not part of the trees the clients show
+    private boolean isShown(Resource res) {
+        return res.getType() != Resource.Type.Instance && res.getType() != Resource.Type.Literal;
+    }
+
+    public boolean isEmpty() {
+        return resources.isEmpty() && ontologies.isEmpty();
+    }
+
+    /**
+     * Creates the operations with the current state of the resources.
+     * @param shown the ontologies in the order the client shows them
+     * @return
+     */
+    public JSONArray toJSON(List<Ontology> shown) {
+        JSONArray ops = new JSONArray();
+
+        addDependents(shown);
+
+        List<Ontology> added = new ArrayList<>();
+        for (Entry<Ontology, Boolean> e : ontologies.entrySet()) {
+            if (e.getValue()) {
+                added.add(e.getKey());
+            } else {
+                JSONObject op = new JSONObject();
+                op.put("op", "removeOntology");
+                op.put("id", e.getKey().getId());
+                ops.put(op);
+            }
+        }
+        for (Ontology onto : added) {
+            int index = shown.indexOf(onto);
+            if (index == -1) {
+                continue;
+            }
+            JSONObject ontoObj = onto.toJSON(index);
+            ontoObj.put("isUser", index == 0);
+
+            JSONObject op = new JSONObject();
+            op.put("op", "addOntology");
+            op.put("ontology", ontoObj);
+            ops.put(op);
+        }
+
+        for (Entry<Resource, Kind> e : resources.entrySet()) {
+            Resource res = e.getKey();
+            Kind kind = e.getValue();
+
+            //not in a tree anymore or contained in an added ontology
+            ResourceIndex index = res.index;
+            if (index == null) {
+                kind = Kind.Remove;
+            } else if (added.contains(index.getOntology())) {
+                continue;
+            }
+
+            JSONObject op = new JSONObject();
+            if (kind == Kind.Remove) {
+                op.put("op", "remove");
+                op.put("id", res.getId());
+            } else {
+                int ontologyIndex = shown.indexOf(index.getOntology());
+                if (ontologyIndex == -1) {
+                    continue;
+                }
+                op.put("op", kind == Kind.Reparent ? "reparent" : "upsert");
+                op.put("ontology", index.getOntology().getId());
+                op.put("resource", res.toJSON(kind != Kind.Changed, ontologyIndex));
+            }
+            ops.put(op);
+        }
+
+        return ops;
+    }
+
+    //children and properties which embed a changed resource
+    private void addDependents(List<Ontology> shown) {
+        Set<Resource> changed = new HashSet<>();
+        for (Entry<Resource, Kind> e : resources.entrySet()) {
+            if (e.getValue() == Kind.Changed) {
+                changed.add(e.getKey());
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        List<Resource> dependents = new ArrayList<>();
+        for (Resource res : changed) {
+            dependents.addAll(res.getChildren());
+        }
+        //only the user ontology refers to resources of other ontologies
+        if (!shown.isEmpty()) {
+            ResourceCursor cursor = new ResourceCursor();
+            for (Resource root : shown.get(0).getRootProperties()) {
+                cursor.reset(root);
+                while (cursor.hasNext()) {
+                    Resource property = cursor.next();
+                    if (changed.contains(property.getDomain()) || changed.contains(property.getRange())) {
+                        dependents.add(property);
+                    }
+                }
+            }
+        }
+        for (Resource res : dependents) {
+            if (isShown(res)) {
+                resources.putIfAbsent(res, Kind.Changed);
+            }
+        }
+    }
+
+}
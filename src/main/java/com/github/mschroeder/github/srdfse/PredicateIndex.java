@@ -0,0 +1,61 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+
+/**
+ * The triples a {@link TripleIndex} does not bucket, grouped by predicate.
+ * Whether a predicate is a property and a subject an instance is only known
+ * when the whole file is read, so the ABox loader looks the groups up
+ * afterwards and skips the ones of unknown predicates as a whole.
+ * Triples are kept once here and not deduplicated, the links of a property
+ * already ignore a link that is added twice.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class PredicateIndex implements TripleReader.Handler {
+
+    private Map<Node, List<Triple>> predicates;
+    private long tripleCount;
+
+    public PredicateIndex() {
+        predicates = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void prefix(String prefix, String uri) {
+        //the triple index keeps them
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        List<Triple> triples = predicates.get(triple.getPredicate());
+        if (triples == null) {
+            triples = new ArrayList<>();
+            predicates.put(triple.getPredicate(), triples);
+        }
+        triples.add(triple);
+        tripleCount++;
+    }
+
+    //in the order the predicates were seen first
+    public Set<Node> getPredicates() {
+        return predicates.keySet();
+    }
+
+    public List<Triple> get(Node predicate) {
+        List<Triple> triples = predicates.get(predicate);
+        return triples == null ? Collections.<Triple>emptyList() : triples;
+    }
+
+    public long getTripleCount() {
+        return tripleCount;
+    }
+
+}
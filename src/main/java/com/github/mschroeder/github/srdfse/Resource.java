@@ -2,13 +2,12 @@ package com.github.mschroeder.github.srdfse;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
-import static java.util.stream.Collectors.toList;
+import java.util.function.Predicate;
 import static java.util.stream.Collectors.toSet;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.vocabulary.XSD;
 import org.json.JSONArray;
@@ -38,7 +37,13 @@ public class Resource implements Comparable<Resource> {
     
     private Type type;
     
+    //assigned by the IdTable of the session, 0 if not registered yet
+    private long id;
+    
     private String localname;
+    
+    //the collections are created on first use, most resources (e.g. the
+    //instances of a big ABox) only need few of them; see getLabel()
     private LangString label;
     private LangString comment;
     
@@ -47,7 +52,7 @@ public class Resource implements Comparable<Resource> {
     private List<Resource> children;
     
     private List<Resource> instances; //for class resource having instances
-    private Set<Link> links; //for property assertions
+    private LinkIndex links; //for property assertions
     
     private Resource domain;
     private Resource range;
@@ -58,17 +63,34 @@ public class Resource implements Comparable<Resource> {
     private String isDefinedBy;
     
     private boolean imported;
+    
+    //the lookup index of the ontology tree this resource is part of
+    /*package*/ ResourceIndex index;
+    
+    //the uri, the namespace version of the ontology it was built for and
+    //its node; replaced as a whole, so a thread never sees a uri with the
+    //version of another one
+    private static class CachedUri {
+
+        private final String uri;
+        private final long version;
+        //created on demand by asNode()
+        private final Node node;
+
+        public CachedUri(String uri, long version, Node node) {
+            this.uri = uri;
+            this.version = version;
+            this.node = node;
+        }
+    }
+
+    //see getURI() and asNode()
+    private volatile CachedUri cachedUri;
 
     public Resource(Ontology ontology, Type type) {
         this.ontology = ontology;
         this.type = type;
         this.localname = "";
-        this.label = new LangString();
-        this.comment = new LangString();
-        this.children = new ArrayList<>();
-        this.instances = new ArrayList<>();
-        this.links = new HashSet<>();
-        this.additionalDomainRangeStatements = new ArrayList<>();
     }
     
     /**
@@ -102,34 +124,79 @@ public class Resource implements Comparable<Resource> {
     }
     
     public void addChild(Resource child) {
+        if(children == null) {
+            children = new ArrayList<>();
+        }
         children.add(child);
         child.parent = this;
         //Collections.sort(children);
+        if(index != null) {
+            index.attach(child);
+        }
     }
     
     public void removeChild(Resource child) {
-        children.remove(child);
+        if(children != null) {
+            children.remove(child);
+        }
         child.parent = null;
+        if(index != null) {
+            index.detach(child);
+        }
     }
 
     public void addInstance(Resource instance) {
+        if(instances == null) {
+            instances = new ArrayList<>();
+        }
         instances.add(instance);
         instance.parent = this;
+        if(index != null) {
+            index.attach(instance);
+        }
     }
     
     public void removeInstance(Resource instance) {
-        instances.remove(instance);
+        if(instances != null) {
+            instances.remove(instance);
+        }
         instance.parent = null;
+        if(index != null) {
+            index.detach(instance);
+        }
     }
     
     public void addLink(Resource source, Resource target) {
-        links.add(new Link(source, target));
-        
+        if(links == null) {
+            links = new LinkIndex();
+        }
+        if(links.add(source, target) && index != null) {
+            index.linked(this, source, target);
+        }
         
+        //instances are indexed by their class, this only covers the ones without
+        if(index != null) {
+            if(source.index == null && source.type != Type.Literal) {
+                index.attach(source);
+            }
+            if(target.index == null && target.type != Type.Literal) {
+                index.attach(target);
+            }
+        }
     }
     
     public void removeLink(Resource source, Resource target) {
-        links.remove(new Link(source, target));
+        if(links != null && links.remove(source, target) && index != null) {
+            index.unlinked(this, source, target);
+        }
+    }
+    
+    public long getId() {
+        return id;
+    }
+
+    /*package*/ void setId(long id) {
+        this.id = id;
     }
     
     public String getLocalname() {
@@ -144,32 +211,94 @@ public class Resource implements Comparable<Resource> {
     }
 
     public void setLocalname(String localname) {
+        if(index == null) {
+            this.localname = localname;
+            cachedUri = null;
+            return;
+        }
+        
+        String oldLocalname = this.localname;
+        String oldUri = getURI();
         this.localname = localname;
+        cachedUri = null;
+        index.renamed(this, oldLocalname, oldUri);
     }
 
+    /**
+     * Created on first call, use {@link #hasLabel()} to only read it.
+     * @return
+     */
     public LangString getLabel() {
+        if(label == null) {
+            label = new LangString();
+        }
         return label;
     }
 
+    public boolean hasLabel() {
+        return label != null && !label.isEmpty();
+    }
+
+    //created on first call like the label
     public LangString getComment() {
+        if(comment == null) {
+            comment = new LangString();
+        }
         return comment;
     }
+
+    public boolean hasComment() {
+        return comment != null && !comment.isEmpty();
+    }
     
     //we reuse comment
     public LangString getLiteral() {
-        return comment;
+        return getComment();
     }
 
     @Override
     public String toString() {
-        return label + " " + localname;
+        return (label == null ? "" : label) + " " + localname;
     }
 
+    /**
+     * The uri is built once and interned; it is built again after the
+     * localname or a namespace of its ontology changed.
+     * @return
+     */
     public String getURI() {
-        if(type == Type.Instance) {
-            return getOntology().getInstanceNamespace() + localname;
+        return cachedUri().uri;
+    }
+
+    //a racing thread builds the same one
+    private CachedUri cachedUri() {
+        long version = getOntology().getNamespaceVersion();
+        CachedUri c = cachedUri;
+        if (c == null || c.version != version) {
+            String u;
+            if(type == Type.Instance) {
+                u = (getOntology().getInstanceNamespace() + localname).intern();
+            } else {
+                u = (getOntology().getUriWithFragment() + localname).intern();
+            }
+            c = new CachedUri(u, version, null);
+            cachedUri = c;
         }
-        return getOntology().getUriWithFragment() + localname;
+        return c;
+    }
+
+    /**
+     * The jena node of the uri, it is kept with the uri, so exports do not
+     * create a node for every triple the resource is in.
+     * @return
+     */
+    public Node asNode() {
+        CachedUri c = cachedUri();
+        if (c.node == null) {
+            c = new CachedUri(c.uri, c.version, NodeFactory.createURI(c.uri));
+            cachedUri = c;
+        }
+        return c.node;
     }
 
     public Resource getDomain() {
@@ -183,6 +312,11 @@ public class Resource implements Comparable<Resource> {
     public boolean hasDomain() {
         return domain != null;
     }
+
+    //part of a tree of a shared ontology and therefore read-only
+    public boolean isShared() {
+        return index != null && index.getOntology().isShared();
+    }
     
     public Resource getRange() {
         return range;
@@ -204,9 +338,19 @@ public class Resource implements Comparable<Resource> {
     }
 
     public List<Statement> getAdditionalDomainRangeStatements() {
+        if(additionalDomainRangeStatements == null) {
+            return Collections.emptyList();
+        }
         return additionalDomainRangeStatements;
     }
     
+    public void addAdditionalDomainRangeStatement(Statement stmt) {
+        if(additionalDomainRangeStatements == null) {
+            additionalDomainRangeStatements = new ArrayList<>(1);
+        }
+        additionalDomainRangeStatements.add(stmt);
+    }
+    
     public String getSeeAlso() {
         return seeAlso;
     }
@@ -268,6 +412,9 @@ public class Resource implements Comparable<Resource> {
     }
 
     public List<Resource> getChildren() {
+        if(children == null) {
+            return Collections.emptyList();
+        }
         return children;
     }
     
@@ -284,27 +431,40 @@ public class Resource implements Comparable<Resource> {
     }
 
     public List<Resource> getInstances() {
+        if(instances == null) {
+            return Collections.emptyList();
+        }
         return instances;
     }
 
     public Set<Link> getLinks() {
+        if(links == null) {
+            return Collections.emptySet();
+        }
         return links;
     }
     
     public Set<Link> getLinksOfSubject(Resource subject) {
-        return links.stream().filter(l -> l.getSource().equals(subject)).collect(toSet());
+        return getObjects(subject).stream().map(o -> new Link(subject, o)).collect(toSet());
     }
     
     public Set<Link> getLinksOfObject(Resource object) {
-        return links.stream().filter(l -> l.getTarget().equals(object)).collect(toSet());
+        return getSubjects(object).stream().map(s -> new Link(s, object)).collect(toSet());
     }
     
+    //a view of the index, copy it to change the links while iterating, see LinkIndex
     public List<Resource> getObjects(Resource subject) {
-        return getLinksOfSubject(subject).stream().map(l -> l.getTarget()).collect(toList());
+        if(links == null) {
+            return Collections.emptyList();
+        }
+        return links.getObjects(subject);
     }
     
     public List<Resource> getSubjects(Resource object) {
-        return getLinksOfObject(object).stream().map(l -> l.getSource()).collect(toList());
+        if(links == null) {
+            return Collections.emptyList();
+        }
+        return links.getSubjects(object);
     }
     
     public Ontology getOntology() {
@@ -326,7 +486,7 @@ public class Resource implements Comparable<Resource> {
     
     public JSONObject toJSON(boolean recursive, int ontologyIndex) {
         JSONObject resObj = new JSONObject();
-        resObj.put("hashCode", hashCode());
+        resObj.put("id", id);
         resObj.put("type", type);
         resObj.put("imported", imported);
         resObj.put("ontologyIndex", ontologyIndex);
@@ -335,8 +495,8 @@ public class Resource implements Comparable<Resource> {
             resObj.put("uri", ontology.getUri());
         }
         resObj.put("localname", localname);
-        resObj.put("label", label.toJSON());
-        resObj.put("comment", comment.toJSON());
+        resObj.put("label", hasLabel() ? label.toJSON() : new JSONObject());
+        resObj.put("comment", hasComment() ? comment.toJSON() : new JSONObject());
         
         if(hasParent())
             resObj.put("parent", parent.toJSON(ontologyIndex));
@@ -347,11 +507,13 @@ public class Resource implements Comparable<Resource> {
         if(hasRange())
             resObj.put("range", range.toJSON(ontologyIndex));
         
-        if(recursive && !children.isEmpty()) {
-            Collections.sort(children);
+        if(recursive && children != null && !children.isEmpty()) {
+            //a sorted copy, the children of shared resources are read by several sessions at once
+            List<Resource> sorted = new ArrayList<>(children);
+            Collections.sort(sorted);
             
             JSONArray childrenArray = new JSONArray();
-            for(Resource res : children) {
+            for(Resource res : sorted) {
                 childrenArray.put(res.toJSON(true, ontologyIndex));
             }
             resObj.put("children", childrenArray);
@@ -369,34 +531,56 @@ public class Resource implements Comparable<Resource> {
         
         JSONObject label = resObj.getJSONObject("label");
         for(String key : label.keySet()) {
-            res.label.put(key, label.getString(key));
+            res.getLabel().put(key, label.getString(key));
         }
         
         JSONObject comment = resObj.getJSONObject("comment");
         for(String key : comment.keySet()) {
-            res.comment.put(key, comment.getString(key));
+            res.getComment().put(key, comment.getString(key));
         }
         
         return res;
     }
     
+    //this resource and all below, better use subtree() or visit()
     public List<Resource> descendants() {
-        Queue<Resource> q = new LinkedList<>();
-        q.add(this);
         List<Resource> descendants = new ArrayList<>(); 
-        while(!q.isEmpty()) {
-            Resource r = q.poll();
-            descendants.add(r);
-            q.addAll(r.children);
-        }
+        visit(descendants::add);
         return descendants;
     }
     
+    /**
+     * This resource and all below in depth-first order, walked lazily by
+     * a {@link ResourceCursor}.
+     * @return
+     */
+    public Iterable<Resource> subtree() {
+        return () -> new ResourceCursor(this);
+    }
+    
+    /**
+     * Visits this resource and all below in depth-first order.
+     * Nothing is allocated while the tree is walked.
+     * @param visitor returns false to stop
+     * @return false if the visitor stopped
+     */
+    public boolean visit(Predicate<Resource> visitor) {
+        if(!visitor.test(this)) {
+            return false;
+        }
+        for(int i = 0; children != null && i < children.size(); i++) {
+            if(!children.get(i).visit(visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     public void change(Resource changeTo, String what, String lang) {
         switch(what) {
-            case "localname": this.localname = changeTo.localname; break;
-            case "label": this.label.put(lang, changeTo.label.get(lang)); break;
-            case "comment": this.comment.put(lang, changeTo.comment.get(lang)); break;
+            case "localname": setLocalname(changeTo.localname); break;
+            case "label": getLabel().put(lang, changeTo.getLabel().get(lang)); break;
+            case "comment": getComment().put(lang, changeTo.getComment().get(lang)); break;
         }
     }
 }
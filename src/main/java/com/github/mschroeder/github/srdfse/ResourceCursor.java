@@ -0,0 +1,80 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a resource and its descendants (children, not instances) depth-first,
+ * the resource itself comes first. Only the path from the root to the
+ * current resource is kept, so nothing is allocated per resource and a
+ * loop can stop at any time. A cursor can be {@link #reset(Resource)} to
+ * walk another tree.
+ * The tree must not be changed while it is walked.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class ResourceCursor implements Iterator<Resource> {
+
+    //the path, and per level the position of the next child
+    private Resource[] path;
+    private int[] positions;
+    private int depth;
+
+    private Resource next;
+
+    public ResourceCursor() {
+        path = new Resource[16];
+        positions = new int[16];
+        depth = -1;
+    }
+
+    public ResourceCursor(Resource root) {
+        this();
+        reset(root);
+    }
+
+    public ResourceCursor reset(Resource root) {
+        Arrays.fill(path, 0, depth + 1, null);
+        depth = -1;
+        next = root;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Resource next() {
+        Resource r = next;
+        if (r == null) {
+            throw new NoSuchElementException();
+        }
+
+        depth++;
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+            positions = Arrays.copyOf(positions, depth * 2);
+        }
+        path[depth] = r;
+        positions[depth] = 0;
+
+        //the first child, or the next sibling of the resource or an ancestor
+        next = null;
+        while (depth >= 0) {
+            List<Resource> children = path[depth].getChildren();
+            int i = positions[depth];
+            if (i < children.size()) {
+                positions[depth] = i + 1;
+                next = children.get(i);
+                break;
+            }
+            path[depth--] = null;
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,303 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Lookup tables for all resources in the trees of one ontology.
+ * Resources are attached when they are added to a root list, a parent or
+ * a class and detached when they are removed, so lookups never walk the trees.
+ * The URI table depends on the namespaces of the ontologies; it is rebuilt
+ * lazily after a namespace changed.
+ * Lookups by id are answered by the {@link IdTable} of the session the
+ * ontology belongs to.
+ * For every resource the properties of these trees which have a link with
+ * it are kept, so its links are removed without looking at all others.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class ResourceIndex {
+
+    private Set<Resource> resources;
+    private Map<String, Resource> localname2class;
+
+    private Map<String, Resource> uri2resource;
+    //namespace version of each ontology the resources of the uri table belong to
+    private Map<Ontology, Long> uriVersions;
+
+    //resource -> property or list of properties it has links of
+    private Map<Resource, Object> resource2properties;
+
+    //rebuild a table when an entry that shadowed another one is removed
+    private int localnameCollisions;
+    private int uriCollisions;
+
+    private Ontology ontology;
+    private IdTable idTable;
+
+    public ResourceIndex(Ontology ontology) {
+        this.ontology = ontology;
+        resources = new LinkedHashSet<>();
+        localname2class = new HashMap<>();
+        uri2resource = new HashMap<>();
+        uriVersions = new HashMap<>();
+        resource2properties = new HashMap<>();
+    }
+
+    //the resource with its children and instances
+    /*package*/ void attach(Resource res) {
+        Deque<Resource> stack = new ArrayDeque<>();
+        stack.push(res);
+        while (!stack.isEmpty()) {
+            Resource r = stack.pop();
+            if (r.index != null && r.index != this) {
+                r.index.remove(r);
+            }
+            put(r);
+            for (Resource child : r.getChildren()) {
+                stack.push(child);
+            }
+            for (Resource inst : r.getInstances()) {
+                stack.push(inst);
+            }
+        }
+        if (idTable != null) {
+            idTable.attached(res);
+        }
+    }
+
+    /*package*/ void detach(Resource res) {
+        if (res.index == this && idTable != null) {
+            idTable.detached(res);
+        }
+        Deque<Resource> stack = new ArrayDeque<>();
+        stack.push(res);
+        while (!stack.isEmpty()) {
+            Resource r = stack.pop();
+            if (r.index == this) {
+                remove(r);
+            }
+            for (Resource child : r.getChildren()) {
+                stack.push(child);
+            }
+            for (Resource inst : r.getInstances()) {
+                stack.push(inst);
+            }
+        }
+    }
+
+    /*package*/ void renamed(Resource res, String oldLocalname, String oldUri) {
+        if (res.getType() == Resource.Type.Class && localname2class.get(oldLocalname) == res) {
+            localname2class.remove(oldLocalname);
+            if (localnameCollisions > 0) {
+                rebuildLocalnames();
+            } else {
+                putLocalname(res);
+            }
+        }
+
+        if (isUriMapValid()) {
+            if (uri2resource.get(oldUri) == res) {
+                uri2resource.remove(oldUri);
+            }
+            if (uriCollisions > 0) {
+                uri2resource = null;
+            } else if (uri2resource.put(res.getURI(), res) != null) {
+                uriCollisions++;
+            }
+        }
+    }
+
+    private void put(Resource res) {
+        res.index = this;
+        resources.add(res);
+        if (idTable != null) {
+            idTable.put(res);
+        }
+
+        if (res.getType() == Resource.Type.Class) {
+            putLocalname(res);
+        }
+
+        for (Link link : res.getLinks()) {
+            linked(res, link.getSource(), link.getTarget());
+        }
+
+        if (isUriMapValid()) {
+            uriVersions.putIfAbsent(res.getOntology(), res.getOntology().getNamespaceVersion());
+            Resource prev = uri2resource.put(res.getURI(), res);
+            if (prev != null && prev != res) {
+                uriCollisions++;
+            }
+        } else {
+            uri2resource = null;
+        }
+    }
+
+    /*package*/ void linked(Resource property, Resource source, Resource target) {
+        LinkIndex.put(resource2properties, source, property);
+        LinkIndex.put(resource2properties, target, property);
+    }
+
+    /*package*/ void unlinked(Resource property, Resource source, Resource target) {
+        unlinked(property, source);
+        unlinked(property, target);
+    }
+
+    private void unlinked(Resource property, Resource res) {
+        if (property.getObjects(res).isEmpty() && property.getSubjects(res).isEmpty()) {
+            LinkIndex.delete(resource2properties, res, property);
+        }
+    }
+
+    private void putLocalname(Resource res) {
+        Resource prev = localname2class.putIfAbsent(res.getLocalname(), res);
+        if (prev != null && prev != res) {
+            localnameCollisions++;
+        }
+    }
+
+    private void remove(Resource res) {
+        res.index = null;
+        resources.remove(res);
+        if (idTable != null) {
+            idTable.remove(res);
+        }
+
+        for (Link link : res.getLinks()) {
+            LinkIndex.delete(resource2properties, link.getSource(), res);
+            LinkIndex.delete(resource2properties, link.getTarget(), res);
+        }
+
+        if (localname2class.get(res.getLocalname()) == res) {
+            localname2class.remove(res.getLocalname());
+            if (localnameCollisions > 0) {
+                rebuildLocalnames();
+            }
+        }
+
+        if (isUriMapValid()) {
+            String uri = res.getURI();
+            if (uri2resource.get(uri) == res) {
+                uri2resource.remove(uri);
+                if (uriCollisions > 0) {
+                    uri2resource = null;
+                }
+            }
+        } else {
+            uri2resource = null;
+        }
+    }
+
+    private void rebuildLocalnames() {
+        localname2class.clear();
+        localnameCollisions = 0;
+        for (Resource res : resources) {
+            if (res.getType() == Resource.Type.Class) {
+                putLocalname(res);
+            }
+        }
+    }
+
+    //imported resources belong to other ontologies, their namespaces count as well
+    private boolean isUriMapValid() {
+        if (uri2resource == null) {
+            return false;
+        }
+        for (Entry<Ontology, Long> e : uriVersions.entrySet()) {
+            if (e.getKey().getNamespaceVersion() != e.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //synchronized because the index of a shared ontology is read by several sessions
+    private synchronized Map<String, Resource> uriMap() {
+        if (!isUriMapValid()) {
+            Map<String, Resource> map = new HashMap<>();
+            Map<Ontology, Long> versions = new HashMap<>();
+            uriCollisions = 0;
+            for (Resource res : resources) {
+                //the version before the uri, a change meanwhile invalidates it
+                versions.putIfAbsent(res.getOntology(), res.getOntology().getNamespaceVersion());
+                if (map.put(res.getURI(), res) != null) {
+                    uriCollisions++;
+                }
+            }
+            uriVersions = versions;
+            uri2resource = map;
+        }
+        return uri2resource;
+    }
+
+    /*package*/ void setIdTable(IdTable idTable) {
+        if (this.idTable != null) {
+            resources.forEach(this.idTable::remove);
+        }
+        this.idTable = idTable;
+        if (idTable != null) {
+            resources.forEach(idTable::put);
+        }
+    }
+
+    /**
+     * Returns the ontology whose trees contain the resources of this index.
+     * Imported references have another {@link Resource#getOntology()}.
+     * @return
+     */
+    public Ontology getOntology() {
+        return ontology;
+    }
+
+    public IdTable getIdTable() {
+        return idTable;
+    }
+
+    /**
+     * Returns the resource with the id if it is part of these trees.
+     * @param id
+     * @return null if there is none or the ontology is not registered
+     */
+    public Resource getById(long id) {
+        if (idTable == null) {
+            return null;
+        }
+        Resource res = idTable.getResource(id);
+        return res != null && res.index == this ? res : null;
+    }
+
+    public Resource getByUri(String uri) {
+        return uriMap().get(uri);
+    }
+
+    /**
+     * Returns the properties of these trees which have links with the
+     * resource as subject or object.
+     * @param res
+     * @return an unmodifiable view, it changes with the links
+     */
+    public List<Resource> getLinkedProperties(Resource res) {
+        return LinkIndex.view(resource2properties.get(res));
+    }
+
+    public Resource getClassByLocalname(String localname) {
+        return localname2class.get(localname);
+    }
+
+    public Map<String, Resource> getUriMap() {
+        return Collections.unmodifiableMap(uriMap());
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+}
@@ -3,15 +3,28 @@ package com.github.mschroeder.github.srdfse;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateExceptionHandler;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.BiConsumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletException;
 import javax.servlet.http.Part;
@@ -21,6 +34,7 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
@@ -43,10 +57,27 @@ public class Server {
     
     //(R)dfs (E)ditor
     public static final int PORT = (int) 'R' * 100 + (int) 'E';
+    
+    private static final long EVICTION_SECONDS = 10;
+    
+    //clients which stopped taking frames are disconnected
+    private static final long OUTBOX_CHECK_SECONDS = 5;
 
     private FreeMarkerEngine freeMarkerEngine;
 
-    private Map<String, EditorFrame> session2context;
+    //session id to the actor owning the editor of the session
+    private Map<String, RoomActor> session2actor;
+    
+    //runs the actors of all rooms
+    private ScheduledExecutorService roomExecutor;
+    
+    //sessions survive a restart, they are loaded on first use
+    private SessionStore store;
+    
+    //unused or least recently used sessions are evicted to the store
+    private long idleMillis;
+    private long memoryBudget;
+    private AtomicLong evictions;
 
     private String serverHost;
 
@@ -59,6 +90,10 @@ public class Server {
     static {
         options.addOption("h", "help", false, "prints this help");
         options.addOption("H", "host", true, "");
+        options.addOption("d", "dir", true, "directory where the sessions are stored (default: sessions)");
+        options.addOption("i", "idle", true, "minutes after an unused session is evicted from memory (default: 30)");
+        options.addOption("m", "memory", true, "estimated megabytes of all sessions in memory (default: half of max heap)");
+        options.addOption("c", "cache", true, "resources of the imported files kept for reuse (default: 1000000)");
     }
 
     public Server(String[] args) {
@@ -75,7 +110,20 @@ public class Server {
             System.exit(0);
         }
 
-        session2context = new HashMap<>();
+        session2actor = new ConcurrentHashMap<>();
+        roomExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        File storeDir = new File(cmd.getOptionValue("dir", "sessions"));
+        store = new DirectorySessionStore(storeDir);
+        //not a valid session id, so it never collides with a session directory
+        OntologyCache.configure(new File(storeDir, "_ontologies"), Long.parseLong(cmd.getOptionValue("cache", "1000000")));
+        Runtime.getRuntime().addShutdownHook(new Thread(store::close));
+        
+        idleMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(cmd.getOptionValue("idle", "30")));
+        memoryBudget = cmd.hasOption("memory") ? 
+                Long.parseLong(cmd.getOptionValue("memory")) * 1024 * 1024 : 
+                Runtime.getRuntime().maxMemory() / 2;
+        evictions = new AtomicLong();
+        roomExecutor.scheduleWithFixedDelay(this::evictSessions, EVICTION_SECONDS, EVICTION_SECONDS, TimeUnit.SECONDS);
         initFreemarker();
         initRoutes();
 
@@ -105,6 +153,7 @@ public class Server {
 
         webSocket = new SRDFSEWebSocket(this);
         spark.Spark.webSocket("/websocket", webSocket);
+        roomExecutor.scheduleWithFixedDelay(webSocket::checkOutboxes, OUTBOX_CHECK_SECONDS, OUTBOX_CHECK_SECONDS, TimeUnit.SECONDS);
 
         spark.Spark.exception(Exception.class, (exception, request, response) -> {
             exception.printStackTrace();
@@ -121,6 +170,7 @@ public class Server {
         spark.Spark.post("/import/:id", this::postImport);
         spark.Spark.get("/download/:id", this::getDownload);
         spark.Spark.delete("/sessions/:id", this::deleteSession);
+        spark.Spark.get("/metrics", this::getMetrics);
     }
 
     private Object getRoot(Request req, Response resp) {
@@ -134,10 +184,11 @@ public class Server {
     private Object postSession(Request req, Response resp) {
         String sessionId = RandomStringUtils.randomAlphanumeric(8);
         
-        EditorFrame editor = new EditorFrame();
+        OntologySession editor = new OntologySession();
         editor.getUserOntology().setPrefix(sessionId);
         editor.getUserOntology().setUri(serverHost + "/sessions/" + sessionId + "/"); //with ending '/'
-        session2context.put(sessionId, editor);
+        store.saveSnapshot(sessionId, editor);
+        session2actor.put(sessionId, new RoomActor(sessionId, editor));
 
         resp.redirect("/sessions/" + sessionId);
         return null;
@@ -154,29 +205,41 @@ public class Server {
     private Object postUploadOrImport(Request req, Response resp, boolean upload) throws IOException, ServletException {
         String id = req.params("id");
         
-        if (!session2context.containsKey(id)) {
+        RoomActor actor = getActor(id);
+        if (actor == null) {
             resp.status(404);
             return "";
         }
         
-        EditorFrame editor = session2context.get(id);
-        
         req.attribute("org.eclipse.jetty.multipartConfig", new MultipartConfigElement("/tmp"));
         Part part = req.raw().getPart("file");
         try (InputStream is = part.getInputStream()) {
             
-            Ontology onto = Ontology.loadTTL(part.getSubmittedFileName(), is);
-            
-            if(upload) {
-                editor.loadUserOntology(onto);
+            //an import is read-only and shared with all sessions importing the same file
+            Ontology onto;
+            if (upload) {
+                onto = Ontology.loadTTL(part.getSubmittedFileName(), is);
             } else {
-                editor.importOntology(onto);
+                onto = OntologyCache.load(part.getSubmittedFileName(), IOUtils.toByteArray(is));
             }
+            if(DEBUG)
+                System.out.println("loaded " + part.getSubmittedFileName() + ": " + onto.getLoadStatistics());
             
-            //notify all
-            SessionRoom room = webSocket.getSessionById(id);
-            if(room != null) {
-                webSocket.sendInit(room, editor);
+            //parsed on the request thread, only the change runs in the room
+            if(upload) {
+                actor.ask(() -> {
+                    actor.getEditor().loadUserOntology(onto);
+                    actor.snapshot();
+                    //notify all
+                    webSocket.sendInit(actor);
+                    return null;
+                }).join();
+            } else {
+                actor.ask(() -> {
+                    actor.mutate(patch -> actor.getEditor().importOntology(onto));
+                    actor.snapshot();
+                    return null;
+                }).join();
             }
         }
         return "";
@@ -185,11 +248,15 @@ public class Server {
     private Object getSession(Request req, Response resp) {
         String id = req.params("id");
 
-        if (!session2context.containsKey(id)) {
+        RoomActor actor = getActor(id);
+        if (actor == null) {
             resp.redirect("/?session_not_found");
             return "";
         }
 
+        //loaded while the page is rendered, the client sends init soon
+        actor.tell(actor::getEditor);
+
         Map<String, Object> m = getDefaultModel(req);
         m.put("sessionId", id);
 
@@ -199,39 +266,131 @@ public class Server {
     private Object getDownload(Request req, Response resp) {
         String id = req.params("id");
 
-        if (!session2context.containsKey(id)) {
+        RoomActor actor = getActor(id);
+        if (actor == null) {
             resp.redirect("/?session_not_found");
             return "";
         }
         
-        EditorFrame editor = session2context.get(id);
+        //?format=nt for N-Triples, ?gzip to compress it
+        boolean ntriples = "nt".equals(req.queryParams("format"));
+        boolean gzip = req.queryParams("gzip") != null;
         
-        String ttl = editor.getUserOntology().toTTL();
+        //written by the actor straight to the client: a consistent state
+        //without a copy, the edits of the room wait until it is written
+        actor.ask(() -> {
+            Ontology userOntology = actor.getEditor().getUserOntology();
+            
+            String extension = ntriples ? "nt" : "ttl";
+            resp.header("Content-Type", ntriples ? "application/n-triples; charset=utf-8" : "text/turtle; charset=utf-8");
+            resp.header("Content-Disposition", "attachment; filename=\""+ userOntology.getPrefix() +"." + extension + "\"");
+            if (gzip) {
+                resp.header("Content-Encoding", "gzip");
+            }
+            
+            try {
+                OutputStream os = resp.raw().getOutputStream();
+                if (gzip) {
+                    os = new GZIPOutputStream(os, 64 * 1024);
+                }
+                try (TripleWriter writer = new TripleWriter(os, ntriples ? TripleReader.Syntax.NTriples : TripleReader.Syntax.Turtle)) {
+                    userOntology.writeTBox(writer);
+                    userOntology.writeABox(writer);
+                }
+                //committed, so spark does not write a body anymore
+                resp.raw().flushBuffer();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            return null;
+        }).join();
         
-        resp.header("Content-Type", "text/turtle");
-        resp.header("Content-Disposition", "attachment; filename=\""+ editor.getUserOntology().getPrefix() +".ttl\"");
+        return "";
+    }
+
+    //outbound queue statistics of the websocket sessions
+    private Object getMetrics(Request req, Response resp) {
+        resp.header("Content-Type", "application/json");
         
-        return ttl;
+        int loaded = 0;
+        long footprint = 0;
+        for (RoomActor actor : session2actor.values()) {
+            if (actor.footprint > 0) {
+                loaded++;
+                footprint += actor.footprint;
+            }
+        }
+        
+        JSONObject json = webSocket.getMetrics();
+        json.put("loadedSessions", loaded);
+        json.put("estimatedSessionBytes", footprint);
+        json.put("evictions", evictions.get());
+        json.put("ontologyCache", OntologyCache.getMetrics());
+        return json.toString(2);
     }
 
     private Object deleteSession(Request req, Response resp) {
         String id = req.params("id");
 
-        if (!session2context.containsKey(id)) {
+        boolean stored = store.contains(id);
+        if (session2actor.remove(id) == null && !stored) {
             resp.status(404);
             return "";
         }
+        store.delete(id);
         
         //get by id and close it
         SessionRoom room = webSocket.getSessionById(id);
         webSocket.closeSessionRoom(room);
-        
-        session2context.remove(id);
 
         resp.status(204);
         return "";
     }
     
+    /**
+     * Returns the actor of the session, the session is loaded from the
+     * store on first use.
+     * @param sessionId
+     * @return null if there is no such session
+     */
+    private RoomActor getActor(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        //the editor itself is loaded by the actor
+        return session2actor.computeIfAbsent(sessionId, id -> store.contains(id) ? new RoomActor(id, null) : null);
+    }
+    
+    /**
+     * Evicts the sessions which were not used for a while and nobody is
+     * connected to. If the sessions still need more memory than the budget,
+     * the least recently used ones are evicted, also when clients are
+     * connected (they do not notice it, the session is loaded again with
+     * the same ids and version).
+     */
+    private void evictSessions() {
+        long now = System.currentTimeMillis();
+        
+        List<RoomActor> loaded = new ArrayList<>();
+        long footprint = 0;
+        for (RoomActor actor : session2actor.values()) {
+            if (actor.footprint > 0) {
+                loaded.add(actor);
+                footprint += actor.footprint;
+            }
+        }
+        loaded.sort(Comparator.comparingLong(actor -> actor.lastUsed));
+        
+        for (RoomActor actor : loaded) {
+            boolean idle = now - actor.lastUsed > idleMillis && webSocket.getSessionById(actor.sessionId) == null;
+            if (idle || footprint > memoryBudget) {
+                footprint -= actor.footprint;
+                actor.evict();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
     public String render(Map<String, Object> m, String templateName) {
         return freeMarkerEngine.render(new ModelAndView(m, templateName));
     }
@@ -242,27 +401,43 @@ public class Server {
         return m;
     }
 
+    //handles a message of a client, called by the actor of its room
+    private interface MessageHandler {
+        void handle(RoomActor actor, Session session, JSONObject data);
+    }
+
     @WebSocket
     public class SRDFSEWebSocket {
 
         private Server server;
 
         // Store sessions if you want to, for example, broadcast a message to all users
-        private Queue<Session> sessions = new ConcurrentLinkedQueue<>();
+        private Set<Session> sessions;
 
         //method name to actual java method
-        private Map<String, BiConsumer<Session, JSONObject>> method2consumer;
+        private Map<String, MessageHandler> method2consumer;
 
         //websocket session to session room of sRDFSe
         private Map<Session, SessionRoom> session2room;
+        
+        //session id to session room
+        private Map<String, SessionRoom> rooms;
+        
+        //outgoing frames of each websocket session
+        private Map<Session, Outbox> outboxes;
+        private Outbox.Metrics metrics;
 
         public SRDFSEWebSocket(Server server) {
             this.server = server;
 
             //collect all sessions
-            sessions = new ConcurrentLinkedQueue<>();
+            sessions = ConcurrentHashMap.newKeySet();
             //session to room assignment (1:1)
-            session2room = new HashMap<>();
+            session2room = new ConcurrentHashMap<>();
+            rooms = new ConcurrentHashMap<>();
+            
+            outboxes = new ConcurrentHashMap<>();
+            metrics = new Outbox.Metrics();
 
             //methods
             method2consumer = new HashMap<>();
@@ -274,12 +449,15 @@ public class Server {
             method2consumer.put("changed", this::messageChanged);
             method2consumer.put("dragAndDrop", this::messageDragAndDrop);
             method2consumer.put("reset", this::messageReset);
+            method2consumer.put("removeInstances", this::messageRemoveInstances);
             method2consumer.put("importPreset", this::messageImportPreset);
+            method2consumer.put("snapshot", this::messageSnapshot);
         }
 
         @OnWebSocketConnect
         public void connected(Session session) throws IOException {
             sessions.add(session);
+            outboxes.put(session, new Outbox(session, metrics));
             if(DEBUG)
                 System.out.println("(C connected)");
         }
@@ -291,6 +469,7 @@ public class Server {
 
             removeSessionFromRoom(session);
             sessions.remove(session);
+            outboxes.remove(session);
             //https://docs.oracle.com/javaee/7/api/javax/websocket/CloseReason.CloseCodes.html
             //UNEXPECTED_CONDITION
             //1011 indicates that a server is terminating the connection because it encountered an unexpected condition that prevented it from fulfilling the request.
@@ -324,255 +503,468 @@ public class Server {
                 return;
             }
 
-            try {
-                method2consumer.get(method).accept(session, json);
-            } catch(Throwable t) {
-                t.printStackTrace();
-                new RuntimeException(t);
+            //the messages of a room are handled one after another by its actor
+            String sessionId;
+            if (method.equals("init")) {
+                sessionId = json.optString("sessionId", null);
+            } else {
+                SessionRoom room = getRoomOfSession(session);
+                sessionId = room == null ? null : room.sessionId;
+            }
+            
+            //no room (not initialized or already closed) or the session was deleted
+            RoomActor actor = sessionId == null ? null : server.getActor(sessionId);
+            if (actor == null) {
+                send(session, "closed");
+                return;
+            }
+            
+            //joined right away, so the next message of the client finds the room
+            if (method.equals("init")) {
+                addSessionToRoom(session, sessionId);
             }
+            
+            //the actor is passed, the room may be gone when the task runs
+            MessageHandler consumer = method2consumer.get(method);
+            actor.tell(() -> consumer.handle(actor, session, json));
         }
 
-        private void messageInit(Session session, JSONObject data) {
-            //connect session with this session id
-            String sessionId = data.getString("sessionId");
-            addSessionToRoom(session, sessionId);
-            EditorFrame editor = server.session2context.get(sessionId);
-
+        private void messageInit(RoomActor actor, Session session, JSONObject data) {
+            //the snapshot has to contain the changes of the batch
+            actor.flush();
             send(session, "init",
-                    "state", editor.toJSON()
+                    "state", actor.getEditor().toJSON()
             );
         }
 
-        private void messageUri(Session session, JSONObject data) {
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-            editor.getUserOntology().setUri(data.getString("value"));
+        private void messageUri(RoomActor actor, Session session, JSONObject data) {
+            actor.edit(data);
+            SessionRoom room = getSessionById(actor.sessionId);
 
             send(room, "ontology",
-                    "prefix", editor.getUserOntology().getPrefix(),
-                    "uri", editor.getUserOntology().getUri()
+                    "prefix", actor.getEditor().getUserOntology().getPrefix(),
+                    "uri", actor.getEditor().getUserOntology().getUri()
             );
         }
 
-        private void messagePrefix(Session session, JSONObject data) {
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-            editor.getUserOntology().setPrefix(data.getString("value"));
+        private void messagePrefix(RoomActor actor, Session session, JSONObject data) {
+            actor.edit(data);
+            SessionRoom room = getSessionById(actor.sessionId);
 
             send(room, "ontology",
-                    "prefix", editor.getUserOntology().getPrefix(),
-                    "uri", editor.getUserOntology().getUri()
+                    "prefix", actor.getEditor().getUserOntology().getPrefix(),
+                    "uri", actor.getEditor().getUserOntology().getUri()
             );
         }
 
-        private void messageCreateResource(Session session, JSONObject data) {
-            JSONObject resObj = data.getJSONObject("resource");
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-
-            Resource resource = Resource.fromJSON(editor.getUserOntology(), resObj);
-
-            if (resource.getType() == Resource.Type.Class) {
-                editor.getUserOntology().getRootClasses().add(resource);
-            } else if (resource.getType() == Resource.Type.Property) {
-                editor.getUserOntology().getRootProperties().add(resource);
+        private void messageCreateResource(RoomActor actor, Session session, JSONObject data) {
+            //notify all because something changed in the tree
+            Resource resource = actor.edit(data);
+            if (resource == null) {
+                return;
             }
 
-            //notify what hashCode the resource has
-            send(session, "created",
+            //notify what id the resource has
+            actor.afterPatch(() -> send(session, "created",
                     "resource", resource.toJSON(0)
-            );
-
-            //notify all because something changed in the tree
-            send(room, "init",
-                    "state", editor.toJSON()
-            );
+            ));
         }
 
-        private void messageChanged(Session session, JSONObject data) {
-            JSONObject resObj = data.getJSONObject("resource");
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-
-            Resource changeTo = Resource.fromJSON(editor.getUserOntology(), resObj);
-
-            editor.getUserOntology().changeResource(resObj.getInt("hashCode"), changeTo, data.getString("what"), data.getString("lang"));
-
+        private void messageChanged(RoomActor actor, Session session, JSONObject data) {
             //notify all that something changed in the tree
-            send(room, "init",
-                    "state", editor.toJSON()
-            );
+            actor.edit(data);
         }
 
-        private void messageRemoveResource(Session session, JSONObject data) {
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-
+        private void messageRemoveResource(RoomActor actor, Session session, JSONObject data) {
             JSONObject resObj = data.getJSONObject("resource");
-            if (resObj.has("hashCode")) {
-                Object obj = editor.getObjectByHashCode(resObj.getInt("hashCode"));
-                
-                if(obj instanceof Ontology) {
-                    editor.removeOntology((Ontology)obj);
-                } else if(obj instanceof Resource) {
-                    //((Resource)obj)
-                    editor.getUserOntology().removeResource(resObj.getInt("hashCode"));
-                }
+            if (resObj.has("id")) {
+                //notify all because something changed in the tree
+                actor.edit(data);
                 
-                JSONObject hashCodeObj = new JSONObject();
-                hashCodeObj.put("hashCode", resObj.getInt("hashCode"));
+                JSONObject idObj = new JSONObject();
+                idObj.put("id", resObj.getLong("id"));
                 
                 //notify all because resource was removed
-                send(room, "removed",
-                        "resource", hashCodeObj
-                );
-
-                //notify all because something changed in the tree
-                send(room, "init",
-                        "state", editor.toJSON()
-                );
+                actor.afterPatch(() -> send(getSessionById(actor.sessionId), "removed",
+                        "resource", idObj
+                ));
             }
         }
 
-        private void messageDragAndDrop(Session session, JSONObject data) {
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-
-            editor.dragAndDrop(
-                    data.getString("srcTreeType"), data.getInt("srcHashCode"),
-                    data.getString("dstTreeType"), data.getInt("dstHashCode")
-            );
+        private void messageDragAndDrop(RoomActor actor, Session session, JSONObject data) {
+            //notify all because something changed in the tree
+            actor.edit(data);
+        }
 
+        private void messageReset(RoomActor actor, Session session, JSONObject data) {
             //notify all because something changed in the tree
-            send(room, "init",
-                    "state", editor.toJSON()
+            actor.edit(data);
+        }
+        
+        //bulk delete, the instances are detached with all their links
+        private void messageRemoveInstances(RoomActor actor, Session session, JSONObject data) {
+            actor.edit(data);
+        }
+        
+        private void messageImportPreset(RoomActor actor, Session session, JSONObject data) {
+            actor.edit(data);
+        }
+        
+        //a client missed a patch and needs the full state again
+        private void messageSnapshot(RoomActor actor, Session session, JSONObject data) {
+            actor.flush();
+            send(session, "init",
+                    "state", actor.getEditor().toJSON()
             );
         }
-
-        private void messageReset(Session session, JSONObject data) {
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-            
-            String what = data.getString("what");
-            int hashCode = data.getInt("hashCode");
+        
+        //======================================================================
+        
+        //the whole state changed, e.g. a new user ontology was uploaded
+        private void sendInit(RoomActor actor) {
+            actor.flush();
+            actor.getEditor().nextVersion();
             
-            Resource res = editor.getUserOntology().findByHashCode(hashCode);
-            if(res != null && res.getType() == Resource.Type.Property) {
-                switch(what) {
-                    case "Domain": res.setDomain(null); break;
-                    case "Range": res.setRange(null); break;
-                }
-                
-                //notify all because something changed in the tree
+            SessionRoom room = getSessionById(actor.sessionId);
+            if (room != null) {
                 send(room, "init",
-                        "state", editor.toJSON()
+                        "state", actor.getEditor().toJSON()
                 );
             }
         }
         
-        private void messageImportPreset(Session session, JSONObject data) {
-            
-            SessionRoom room = getRoomOfSession(session);
-            EditorFrame editor = getEditor(session);
-            
-            String preset = data.getString("preset");
-            
-            editor.importOntologyFromResource(preset);
+        /**
+         * Sends only the changed nodes to the room.
+         * The client applies the patch if its version follows the one
+         * it has, otherwise it asks for a snapshot.
+         * @param actor
+         * @param patch 
+         */
+        private void sendPatch(RoomActor actor, Patch patch) {
+            SessionRoom room = getSessionById(actor.sessionId);
+            if (patch.isEmpty() || room == null) {
+                return;
+            }
             
-            send(room, "init",
-                    "state", editor.toJSON()
-            );
-        }
-        
-        //======================================================================
-        
-        private void sendInit(SessionRoom room, EditorFrame editor) {
-            send(room, "init",
-                    "state", editor.toJSON()
+            send(room, "patch",
+                    "version", actor.getEditor().nextVersion(),
+                    "ops", patch.toJSON(actor.getEditor().getOntologies())
             );
         }
         
+        //the message is encoded once and the same frame is sent to everyone
         private void send(SessionRoom room, String method, Object... keyValueParams) {
+            if (room == null) {
+                return;
+            }
+            String frame = encode(method, keyValueParams);
             for (Session session : room.sessions) {
-                send(session, method, keyValueParams);
+                sendFrame(session, method, frame);
             }
         }
 
         private void send(Session session, String method, Object... keyValueParams) {
+            sendFrame(session, method, encode(method, keyValueParams));
+        }
+
+        private String encode(String method, Object... keyValueParams) {
             JSONObject json = new JSONObject();
             json.put("method", method);
             for (int i = 0; i < keyValueParams.length; i += 2) {
                 json.put((String) keyValueParams[i], keyValueParams[i + 1]);
             }
+            String frame = json.toString();
             if(DEBUG)
-                System.out.println("S: " + json.toString());
-            try {
-                session.getRemote().sendString(json.toString());
-            } catch (IOException ex) {
-                session.close();
+                System.out.println("S: " + frame);
+            return frame;
+        }
+
+        //does not wait until the frame is written, so a slow client does not block the others
+        private void sendFrame(Session session, String method, String frame) {
+            Outbox outbox = outboxes.get(session);
+            if (outbox != null) {
+                outbox.offer(method, frame);
+            }
+        }
+        
+        private void checkOutboxes() {
+            outboxes.values().forEach(Outbox::checkProgress);
+        }
+        
+        private JSONObject getMetrics() {
+            int depth = 0;
+            int maxDepth = 0;
+            for (Outbox outbox : outboxes.values()) {
+                int size = outbox.size();
+                depth += size;
+                maxDepth = Math.max(maxDepth, size);
             }
+            
+            JSONObject json = metrics.toJSON();
+            json.put("sessions", outboxes.size());
+            json.put("queueDepth", depth);
+            json.put("maxQueueDepth", maxDepth);
+            return json;
         }
 
         //room management
         private SessionRoom addSessionToRoom(Session session, String id) {
-            SessionRoom foundRoom = null;
-
-            for (SessionRoom room : session2room.values()) {
-                if (room.sessionId.equals(id)) {
-                    foundRoom = room;
-                    break;
-                }
-            }
-
-            if (foundRoom == null) {
-                foundRoom = new SessionRoom(id);
+            //a session can only be in one room
+            SessionRoom previous = session2room.get(session);
+            if (previous != null && !previous.sessionId.equals(id)) {
+                removeSessionFromRoom(session);
             }
 
-            session2room.put(session, foundRoom);
-            foundRoom.sessions.add(session);
+            //atomic per room, so a room is never dropped while someone joins
+            SessionRoom room = rooms.compute(id, (key, r) -> {
+                if (r == null) {
+                    r = new SessionRoom(key);
+                }
+                r.sessions.add(session);
+                return r;
+            });
+            session2room.put(session, room);
 
             //TODO update user list for other sessions in room
-            return foundRoom;
+            return room;
         }
 
         private void removeSessionFromRoom(Session session) {
             //TODO update user list for other sessions in room
 
-            getRoomOfSession(session).sessions.remove(session);
+            SessionRoom room = session2room.remove(session);
+            if (room == null) {
+                return;
+            }
+
+            //the last one leaving removes the room
+            rooms.computeIfPresent(room.sessionId, (key, r) -> {
+                r.sessions.remove(session);
+                return r.sessions.isEmpty() ? null : r;
+            });
         }
 
         private SessionRoom getRoomOfSession(Session session) {
             return session2room.get(session);
         }
 
-        private EditorFrame getEditor(Session session) {
-            SessionRoom room = getRoomOfSession(session);
-            return server.session2context.get(room.sessionId);
+        private SessionRoom getSessionById(String id) {
+            return rooms.get(id);
+        }
+        
+        private void closeSessionRoom(SessionRoom room) {
+            if (room != null) {
+                send(room, "closed");
+            }
         }
+        
+    }
 
-        private SessionRoom getSessionById(String id) {
-            for (SessionRoom room : session2room.values()) {
-                if (room.sessionId.equals(id)) {
-                    return room;
+    /**
+     * Owns the editor of a session and applies all changes to it one after
+     * another on the room executor, so the ontology needs no locks and
+     * different rooms run in parallel.
+     * Mutations arriving within {@link #BATCH_MILLIS} are collected in one
+     * patch which is sent once to the room.
+     * The editor can be evicted to the store and is loaded again by the
+     * next task which needs it.
+     */
+    private class RoomActor implements Runnable {
+
+        private static final long BATCH_MILLIS = 5;
+        
+        //a new snapshot replaces the edit log after so many edits
+        private static final int EDITS_PER_SNAPSHOT = 500;
+        
+        //rough heap usage of a resource with its labels, links and statements
+        private static final long BYTES_PER_OBJECT = 1024;
+
+        /*package*/ String sessionId;
+        //null while evicted
+        private OntologySession editor;
+        
+        //read by the eviction
+        /*package*/ volatile long lastUsed;
+        /*package*/ volatile long footprint;
+
+        private Queue<Runnable> mailbox;
+        private AtomicBoolean scheduled;
+
+        //only used by the thread running the actor
+        private Patch patch;
+        private List<Runnable> afterPatch;
+        private int editsSinceSnapshot;
+
+        public RoomActor(String sessionId, OntologySession editor) {
+            this.sessionId = sessionId;
+            this.editor = editor;
+            this.mailbox = new ConcurrentLinkedQueue<>();
+            this.scheduled = new AtomicBoolean();
+            this.afterPatch = new ArrayList<>();
+            this.lastUsed = System.currentTimeMillis();
+            updateFootprint();
+        }
+        
+        /**
+         * Returns the editor and loads it from the store if it was evicted.
+         * Call this from a task of this actor.
+         * @return 
+         */
+        public OntologySession getEditor() {
+            if (editor == null) {
+                editor = store.load(sessionId);
+                if (editor == null) {
+                    throw new RuntimeException("session " + sessionId + " not found");
                 }
+                editsSinceSnapshot = 0;
+                updateFootprint();
             }
-            return null;
+            return editor;
         }
         
-        private void closeSessionRoom(SessionRoom room) {
-            send(room, "closed");
+        //stores the editor and frees it
+        public void evict() {
+            enqueue(() -> {
+                if (editor != null) {
+                    flush();
+                    //also the version which is not part of the edit log
+                    snapshot();
+                    editor = null;
+                    updateFootprint();
+                }
+            });
+        }
+        
+        private void updateFootprint() {
+            footprint = editor == null ? 0 : editor.getIdTable().size() * BYTES_PER_OBJECT;
+        }
+
+        /**
+         * Queues the task, it runs later on the room executor.
+         * @param task
+         */
+        public void tell(Runnable task) {
+            lastUsed = System.currentTimeMillis();
+            enqueue(task);
         }
         
+        private void enqueue(Runnable task) {
+            mailbox.add(task);
+            if (scheduled.compareAndSet(false, true)) {
+                roomExecutor.schedule(this, BATCH_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        public <T> CompletableFuture<T> ask(Supplier<T> task) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            tell(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = mailbox.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            try {
+                flush();
+                updateFootprint();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            } finally {
+                scheduled.set(false);
+                //something arrived after the mailbox was empty
+                if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+                    roomExecutor.execute(this);
+                }
+            }
+        }
+
+        /**
+         * Applies a change, it is sent with the other changes of the batch.
+         * Call this from a task of this actor.
+         * @param mutation
+         */
+        public void mutate(Consumer<Patch> mutation) {
+            if (patch == null) {
+                patch = new Patch();
+                getEditor().getIdTable().setListener(patch);
+            }
+            mutation.accept(patch);
+        }
+
+        /**
+         * Applies an edit of a client and appends it to the edit log of
+         * the session. Call this from a task of this actor.
+         * @param edit the message of the client
+         * @return the resource which was created or changed, otherwise null
+         */
+        public Resource edit(JSONObject edit) {
+            Resource[] changed = new Resource[1];
+            mutate(patch -> {
+                changed[0] = getEditor().apply(edit);
+                if (changed[0] != null) {
+                    patch.changed(changed[0]);
+                }
+            });
+
+            store.appendEdit(sessionId, edit);
+            if (++editsSinceSnapshot >= EDITS_PER_SNAPSHOT) {
+                snapshot();
+            }
+            return changed[0];
+        }
+
+        //stores the whole state, e.g. after an upload which is not an edit
+        public void snapshot() {
+            store.saveSnapshot(sessionId, getEditor());
+            editsSinceSnapshot = 0;
+        }
+
+        //runs after the patch of the current batch was sent
+        public void afterPatch(Runnable runnable) {
+            afterPatch.add(runnable);
+        }
+
+        /**
+         * Sends the collected changes; call this before the state is read
+         * as a whole.
+         */
+        public void flush() {
+            if (patch != null) {
+                editor.getIdTable().setListener(null);
+                Patch sent = patch;
+                patch = null;
+                webSocket.sendPatch(this, sent);
+            }
+
+            List<Runnable> runnables = new ArrayList<>(afterPatch);
+            afterPatch.clear();
+            runnables.forEach(Runnable::run);
+        }
+
     }
 
     private class SessionRoom {
 
         /*package*/ String sessionId;
-        /*package*/ List<Session> sessions;
+        /*package*/ Set<Session> sessions;
 
         public SessionRoom(String sessionId) {
             this.sessionId = sessionId;
-            this.sessions = new ArrayList<>();
+            //joins and leaves do not disturb a running broadcast
+            this.sessions = ConcurrentHashMap.newKeySet();
         }
 
     }
@@ -0,0 +1,53 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the complete state of an {@link OntologySession} and reads it
+ * back with the same ids, so clients can keep using them after a restart.
+ * The ontologies are written in the {@link OntologyBinary} form, preceded
+ * by the state of the session itself.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class SessionSnapshot {
+
+    public static void write(OntologySession session, OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeLong(session.getVersion());
+        dos.writeLong(session.getIdTable().getLastId());
+        dos.writeUTF(session.getLabelLanguage());
+        dos.writeInt(session.getOntologies().size());
+        dos.flush();
+
+        OntologyBinary.write(session.getOntologies(), os);
+    }
+
+    public static OntologySession read(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        long version = dis.readLong();
+        long lastId = dis.readLong();
+        String labelLanguage = dis.readUTF();
+        int shown = dis.readInt();
+
+        //followed by the ones they refer to
+        List<Ontology> ontos = OntologyBinary.read(dis, true);
+
+        OntologySession session = new OntologySession();
+        session.getIdTable().reserve(lastId);
+        session.setLabelLanguage(labelLanguage);
+        session.loadUserOntology(ontos.get(0));
+        for (int i = 1; i < shown; i++) {
+            session.importOntology(ontos.get(i));
+        }
+        session.setVersion(version);
+        return session;
+    }
+
+}
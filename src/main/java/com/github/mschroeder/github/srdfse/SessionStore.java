@@ -0,0 +1,45 @@
+package com.github.mschroeder.github.srdfse;
+
+import org.json.JSONObject;
+
+/**
+ * Keeps the web sessions beyond the lifetime of the server.
+ * A session is stored as a snapshot of its whole state followed by the
+ * edits applied after it (see {@link OntologySession#apply(JSONObject)}).
+ * The methods writing are called by the actor of the room and must not
+ * block it; they may write later in the background.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public interface SessionStore {
+
+    /**
+     * Replaces the stored state; earlier edits are not needed anymore.
+     * The session is encoded before the method returns.
+     * @param sessionId
+     * @param session
+     */
+    public void saveSnapshot(String sessionId, OntologySession session);
+
+    /**
+     * Appends an edit which was applied after the last snapshot.
+     * @param sessionId
+     * @param edit
+     */
+    public void appendEdit(String sessionId, JSONObject edit);
+
+    /**
+     * Restores the session from the last snapshot and its edits.
+     * @param sessionId
+     * @return null if the session is not stored
+     */
+    public OntologySession load(String sessionId);
+
+    public boolean contains(String sessionId);
+
+    public void delete(String sessionId);
+
+    //writes everything which is still pending
+    public void close();
+
+}
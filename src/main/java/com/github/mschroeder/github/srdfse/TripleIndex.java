@@ -0,0 +1,255 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * Triples sorted by subject in one linear pass.
+ * The predicates the TBox loader is interested in get their own buckets,
+ * so building resources never has to query a model again.
+ * Used as a {@link TripleReader.Handler} the triples are indexed while
+ * they are parsed. Like in a model, a bucketed triple stated twice is kept once.
+ * All other triples are not kept here, they are handed on to the ABox handler,
+ * if there is one.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class TripleIndex implements TripleReader.Handler {
+
+    //the predicates with a bucket
+    private static final Set<Node> BUCKETS = new HashSet<>(Arrays.asList(
+            RDF.type.asNode(),
+            RDFS.subClassOf.asNode(),
+            RDFS.subPropertyOf.asNode(),
+            RDFS.domain.asNode(),
+            RDFS.range.asNode(),
+            RDFS.label.asNode(),
+            RDFS.comment.asNode(),
+            OWL.inverseOf.asNode()
+    ));
+
+    private Map<Node, Subject> subjects;
+    private Map<String, String> prefixes;
+    private TripleReader.Handler others;
+    private long tripleCount;
+
+    public TripleIndex() {
+        this(null);
+    }
+
+    /**
+     * @param others gets the triples which are not bucketed and which can be
+     * links of instances, can be null
+     */
+    public TripleIndex(TripleReader.Handler others) {
+        subjects = new LinkedHashMap<>();
+        prefixes = new LinkedHashMap<>();
+        this.others = others;
+    }
+
+    /**
+     * Indexes all triples of the model with a single scan.
+     * @param m
+     * @param others can be null
+     * @return
+     */
+    public static TripleIndex of(Model m, TripleReader.Handler others) {
+        TripleIndex index = new TripleIndex(others);
+        index.prefixes.putAll(m.getNsPrefixMap());
+        ExtendedIterator<Triple> iter = m.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (iter.hasNext()) {
+                index.add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+        return index;
+    }
+
+    @Override
+    public void prefix(String prefix, String uri) {
+        prefixes.put(prefix, uri);
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        add(triple);
+    }
+
+    public void add(Triple t) {
+        Node p = t.getPredicate();
+
+        if (!BUCKETS.contains(p)) {
+            tripleCount++;
+            //a link needs a named instance as subject and a named or literal object
+            if (others != null && t.getSubject().isURI() && !t.getObject().isBlank()) {
+                others.triple(t);
+            }
+            return;
+        }
+
+        Subject subject = subjects.get(t.getSubject());
+        if (subject == null) {
+            subject = new Subject(t.getSubject());
+            subjects.put(t.getSubject(), subject);
+        }
+
+        Node o = t.getObject();
+
+        if (p.equals(RDF.type.asNode())) {
+            subject.types = add(subject.types, o);
+        } else if (p.equals(RDFS.subClassOf.asNode())) {
+            subject.subClassOf = add(subject.subClassOf, o);
+        } else if (p.equals(RDFS.subPropertyOf.asNode())) {
+            subject.subPropertyOf = add(subject.subPropertyOf, o);
+        } else if (p.equals(RDFS.domain.asNode())) {
+            subject.domain = add(subject.domain, o);
+        } else if (p.equals(RDFS.range.asNode())) {
+            subject.range = add(subject.range, o);
+        } else if (p.equals(RDFS.label.asNode())) {
+            subject.label = add(subject.label, o);
+        } else if (p.equals(RDFS.comment.asNode())) {
+            subject.comment = add(subject.comment, o);
+        } else if (p.equals(OWL.inverseOf.asNode())) {
+            subject.inverseOf = add(subject.inverseOf, o);
+        }
+    }
+
+    //the bucket is returned, it is unchanged if it already has the object
+    private List<Node> add(List<Node> bucket, Node o) {
+        //most subjects only use a few buckets, so they are created on demand
+        if (bucket == null) {
+            bucket = new ArrayList<>(2);
+        } else if (bucket.contains(o)) {
+            return bucket;
+        }
+        bucket.add(o);
+        tripleCount++;
+        return bucket;
+    }
+
+    public Subject get(Node subject) {
+        return subjects.get(subject);
+    }
+
+    //in the order the subjects were seen first
+    public Collection<Subject> getSubjects() {
+        return subjects.values();
+    }
+
+    public int size() {
+        return subjects.size();
+    }
+
+    //bucketed triples once, the others as often as they were read
+    public long getTripleCount() {
+        return tripleCount;
+    }
+
+    public Map<String, String> getPrefixMap() {
+        return prefixes;
+    }
+
+    /**
+     * The buckets of one subject.
+     * Each list holds the objects of the triples with that predicate
+     * in the order they were read.
+     */
+    public static class Subject {
+
+        private Node node;
+
+        private List<Node> types;
+        private List<Node> subClassOf;
+        private List<Node> subPropertyOf;
+        private List<Node> domain;
+        private List<Node> range;
+        private List<Node> label;
+        private List<Node> comment;
+        private List<Node> inverseOf;
+
+        public Subject(Node node) {
+            this.node = node;
+        }
+
+        private static List<Node> nonNull(List<Node> bucket) {
+            return bucket == null ? Collections.<Node>emptyList() : bucket;
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        //the non-empty buckets with their predicate
+        public void forEachBucket(BiConsumer<Node, List<Node>> consumer) {
+            forEach(consumer, RDF.type, types);
+            forEach(consumer, RDFS.subClassOf, subClassOf);
+            forEach(consumer, RDFS.subPropertyOf, subPropertyOf);
+            forEach(consumer, RDFS.domain, domain);
+            forEach(consumer, RDFS.range, range);
+            forEach(consumer, RDFS.label, label);
+            forEach(consumer, RDFS.comment, comment);
+            forEach(consumer, OWL.inverseOf, inverseOf);
+        }
+
+        private static void forEach(BiConsumer<Node, List<Node>> consumer, Property predicate, List<Node> bucket) {
+            if (bucket != null) {
+                consumer.accept(predicate.asNode(), bucket);
+            }
+        }
+
+        public boolean hasType(Node type) {
+            return types != null && types.contains(type);
+        }
+
+        public List<Node> getTypes() {
+            return nonNull(types);
+        }
+
+        public List<Node> getSubClassOf() {
+            return nonNull(subClassOf);
+        }
+
+        public List<Node> getSubPropertyOf() {
+            return nonNull(subPropertyOf);
+        }
+
+        public List<Node> getDomain() {
+            return nonNull(domain);
+        }
+
+        public List<Node> getRange() {
+            return nonNull(range);
+        }
+
+        public List<Node> getLabel() {
+            return nonNull(label);
+        }
+
+        public List<Node> getComment() {
+            return nonNull(comment);
+        }
+
+        public List<Node> getInverseOf() {
+            return nonNull(inverseOf);
+        }
+
+    }
+}
@@ -0,0 +1,303 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.n3.turtle.TurtleEventHandler;
+import org.apache.jena.n3.turtle.parser.TurtleParser;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfxml.xmlinput.ALiteral;
+import org.apache.jena.rdfxml.xmlinput.ARP;
+import org.apache.jena.rdfxml.xmlinput.AResource;
+import org.apache.jena.rdfxml.xmlinput.NamespaceHandler;
+import org.apache.jena.rdfxml.xmlinput.StatementHandler;
+import org.apache.jena.util.FileUtils;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Reads RDF in one streaming pass.
+ * The syntax is detected once from the file extension and the first bytes of
+ * the stream, so a file is parsed exactly one time and every triple is handed
+ * to a {@link Handler} as soon as the parser produces it.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class TripleReader {
+
+    public enum Syntax {
+        Turtle, //also the Turtle subset of N3
+        NTriples,
+        RDFXML
+    }
+
+    /**
+     * Receives the parsed prefixes and triples.
+     */
+    public interface Handler {
+
+        public void prefix(String prefix, String uri);
+
+        public void triple(Triple triple);
+
+    }
+
+    //how many bytes are looked at to detect the syntax
+    private static final int SNIFF_SIZE = 4 * 1024;
+
+    private static final List<String> TURTLE_EXTENSIONS = Arrays.asList("ttl", "turtle", "n3");
+    private static final List<String> NTRIPLES_EXTENSIONS = Arrays.asList("nt", "ntriples");
+    private static final List<String> RDFXML_EXTENSIONS = Arrays.asList("rdf", "owl", "xml", "rdfs");
+
+    public static void read(File file, Handler handler) {
+        try (InputStream is = new FileInputStream(file)) {
+            read(file.getName(), file.toURI().toString(), is, handler);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Detects the syntax and streams all triples to the handler.
+     * Relative URIs are resolved against the file name.
+     * @param filename used for the extension, can be null
+     * @param is the stream is not closed
+     * @param handler
+     */
+    public static void read(String filename, InputStream is, Handler handler) {
+        read(filename, base(filename), is, handler);
+    }
+
+    /**
+     * Detects the syntax and streams all triples to the handler.
+     * @param filename used for the extension, can be null
+     * @param base relative URIs are resolved against it, can be null
+     * @param is the stream is not closed
+     * @param handler
+     */
+    public static void read(String filename, String base, InputStream is, Handler handler) {
+        BufferedInputStream bis = new BufferedInputStream(is, SNIFF_SIZE * 2);
+
+        Syntax syntax;
+        try {
+            bis.mark(SNIFF_SIZE);
+            byte[] head = new byte[SNIFF_SIZE];
+            int len = 0;
+            int r;
+            while(len < head.length && (r = bis.read(head, len, head.length - len)) != -1) {
+                len += r;
+            }
+            bis.reset();
+
+            syntax = detect(filename, head, len);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        read(syntax, base, bis, handler);
+    }
+
+    public static void read(Syntax syntax, InputStream is, Handler handler) {
+        read(syntax, null, is, handler);
+    }
+
+    public static void read(Syntax syntax, String base, InputStream is, Handler handler) {
+        switch(syntax) {
+            case Turtle: readTurtle(base, is, handler); break;
+            case NTriples: readNTriples(base, is, handler); break;
+            case RDFXML: readRDFXML(base, is, handler); break;
+        }
+    }
+
+    //an uploaded file has no location, only its name
+    private static String base(String filename) {
+        if(filename == null) {
+            return null;
+        }
+        try {
+            return new URI("file", null, "/" + FilenameUtils.getName(filename), null).toASCIIString();
+        } catch (URISyntaxException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Guesses the syntax.
+     * A clear XML head wins, then the file extension decides and
+     * Turtle is the fallback.
+     * @param filename can be null
+     * @param head first bytes of the content
+     * @param length number of valid bytes in head
+     * @return
+     */
+    public static Syntax detect(String filename, byte[] head, int length) {
+        String text = new String(head, 0, Math.max(length, 0), StandardCharsets.UTF_8);
+
+        //skip byte order mark and leading whitespace
+        int i = 0;
+        while(i < text.length() && (Character.isWhitespace(text.charAt(i)) || text.charAt(i) == '\uFEFF')) {
+            i++;
+        }
+        String start = text.substring(i);
+
+        if(start.startsWith("<?xml") || start.startsWith("<rdf:RDF") || start.startsWith("<!DOCTYPE") ||
+           (start.startsWith("<!--") && text.contains("xmlns"))) {
+            return Syntax.RDFXML;
+        }
+
+        if(filename != null) {
+            String ext = FilenameUtils.getExtension(filename).toLowerCase(Locale.ENGLISH);
+            if(RDFXML_EXTENSIONS.contains(ext)) {
+                return Syntax.RDFXML;
+            }
+            if(TURTLE_EXTENSIONS.contains(ext)) {
+                return Syntax.Turtle;
+            }
+            if(NTRIPLES_EXTENSIONS.contains(ext)) {
+                return Syntax.NTriples;
+            }
+        }
+
+        return Syntax.Turtle;
+    }
+
+    private static void readTurtle(String base, InputStream is, Handler handler) {
+        TurtleParser parser = new TurtleParser(FileUtils.asUTF8(is));
+        parser.setBaseURI(base);
+        parser.setEventHandler(new TurtleEventHandler() {
+            @Override
+            public void triple(int line, int col, Triple triple) {
+                handler.triple(triple);
+            }
+
+            @Override
+            public void prefix(int line, int col, String prefix, String iri) {
+                handler.prefix(prefix, iri);
+            }
+
+            @Override
+            public void startFormula(int line, int col) {
+                throw new RuntimeException("N3 formulae are not supported (line " + line + ", column " + col + ")");
+            }
+
+            @Override
+            public void endFormula(int line, int col) {
+            }
+        });
+
+        try {
+            parser.parse();
+        } catch (Exception | Error e) {
+            throw new RuntimeException(Syntax.Turtle + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void readNTriples(String base, InputStream is, Handler handler) {
+        //the reader only knows models, so it gets one that forwards every added triple
+        Model sink = ModelFactory.createModelForGraph(new GraphBase() {
+            @Override
+            protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+                return NullIterator.instance();
+            }
+
+            @Override
+            public void performAdd(Triple t) {
+                handler.triple(t);
+            }
+        });
+
+        try {
+            sink.getReader("N-TRIPLE").read(sink, is, base == null ? "" : base);
+        } catch (Exception e) {
+            throw new RuntimeException(Syntax.NTriples + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void readRDFXML(String base, InputStream is, Handler handler) {
+        ARP arp = new ARP();
+
+        arp.getHandlers().setStatementHandler(new StatementHandler() {
+            @Override
+            public void statement(AResource subj, AResource pred, AResource obj) {
+                handler.triple(Triple.create(toNode(subj), toNode(pred), toNode(obj)));
+            }
+
+            @Override
+            public void statement(AResource subj, AResource pred, ALiteral lit) {
+                handler.triple(Triple.create(toNode(subj), toNode(pred), toNode(lit)));
+            }
+        });
+
+        arp.getHandlers().setNamespaceHandler(new NamespaceHandler() {
+            @Override
+            public void startPrefixMapping(String prefix, String uri) {
+                handler.prefix(prefix, uri);
+            }
+
+            @Override
+            public void endPrefixMapping(String prefix) {
+            }
+        });
+
+        arp.getHandlers().setErrorHandler(new ErrorHandler() {
+            @Override
+            public void warning(SAXParseException exception) throws SAXException {
+            }
+
+            @Override
+            public void error(SAXParseException exception) throws SAXException {
+                throw exception;
+            }
+
+            @Override
+            public void fatalError(SAXParseException exception) throws SAXException {
+                throw exception;
+            }
+        });
+
+        try {
+            arp.load(is, base == null ? "" : base);
+        } catch (SAXException | IOException e) {
+            throw new RuntimeException(Syntax.RDFXML + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Node toNode(AResource res) {
+        if(res.isAnonymous()) {
+            return NodeFactory.createBlankNode(res.getAnonymousID());
+        }
+        return NodeFactory.createURI(res.getURI());
+    }
+
+    private static Node toNode(ALiteral lit) {
+        String datatypeURI = lit.getDatatypeURI();
+        if(datatypeURI == null && lit.isWellFormedXML()) {
+            datatypeURI = RDF.getURI() + "XMLLiteral";
+        }
+
+        if(datatypeURI != null) {
+            return NodeFactory.createLiteral(lit.toString(), TypeMapper.getInstance().getSafeTypeByName(datatypeURI));
+        }
+
+        return NodeFactory.createLiteral(lit.toString(), lit.getLang());
+    }
+}
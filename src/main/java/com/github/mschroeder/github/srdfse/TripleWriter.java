@@ -0,0 +1,292 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Writes RDF in one streaming pass, the counterpart of the
+ * {@link TripleReader}. Every triple is written as soon as it is handed
+ * over, nothing is collected, so the memory does not grow with the
+ * ontology and the first bytes are written right away.
+ * In Turtle, prefixes are declared when they are handed over and
+ * consecutive triples with the same subject are grouped; the output is
+ * not sorted.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class TripleWriter implements TripleReader.Handler, Closeable {
+
+    private static final String XSD_STRING = XSDDatatype.XSDstring.getURI();
+
+    private final Writer writer;
+    private final boolean turtle;
+
+    //prefix -> namespace and namespace -> prefix (Turtle only)
+    private final Map<String, String> prefixes;
+    private final Map<String, String> namespaces;
+
+    //the statement which is not terminated yet (Turtle only)
+    private Node lastSubject;
+    private Node lastPredicate;
+
+    private long count;
+
+    /**
+     * @param os the stream is closed by {@link #close()}
+     * @param syntax Turtle or NTriples
+     */
+    public TripleWriter(OutputStream os, TripleReader.Syntax syntax) {
+        if (syntax == TripleReader.Syntax.RDFXML) {
+            throw new IllegalArgumentException("RDF/XML can not be streamed");
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+        this.turtle = syntax == TripleReader.Syntax.Turtle;
+        this.prefixes = new HashMap<>();
+        this.namespaces = new HashMap<>();
+    }
+
+    @Override
+    public void prefix(String prefix, String uri) {
+        if (!turtle || prefix == null || uri == null || !isPrefixName(prefix)) {
+            return;
+        }
+        String old = prefixes.put(prefix, uri);
+        if (uri.equals(old)) {
+            return;
+        }
+        //a redeclared prefix is valid for the following statements
+        if (old != null && prefix.equals(namespaces.get(old))) {
+            namespaces.remove(old);
+        }
+        namespaces.put(uri, prefix);
+
+        try {
+            terminate();
+            writer.write("@prefix ");
+            writer.write(prefix);
+            writer.write(": ");
+            writeIRI(uri);
+            writer.write(" .\n");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        try {
+            if (turtle) {
+                writeTurtle(triple);
+            } else {
+                writeNode(triple.getSubject());
+                writer.write(' ');
+                writeNode(triple.getPredicate());
+                writer.write(' ');
+                writeNode(triple.getObject());
+                writer.write(" .\n");
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        count++;
+    }
+
+    private void writeTurtle(Triple triple) throws IOException {
+        Node s = triple.getSubject();
+        Node p = triple.getPredicate();
+
+        if (s.equals(lastSubject) && p.equals(lastPredicate)) {
+            writer.write(" ,\n        ");
+        } else if (s.equals(lastSubject)) {
+            writer.write(" ;\n    ");
+            writePredicate(p);
+            writer.write(' ');
+        } else {
+            terminate();
+            writeNode(s);
+            writer.write(' ');
+            writePredicate(p);
+            writer.write(' ');
+        }
+        writeNode(triple.getObject());
+
+        lastSubject = s;
+        lastPredicate = p;
+    }
+
+    private void writePredicate(Node p) throws IOException {
+        if (p.equals(RDF.type.asNode())) {
+            writer.write('a');
+        } else {
+            writeNode(p);
+        }
+    }
+
+    private void terminate() throws IOException {
+        if (lastSubject != null) {
+            writer.write(" .\n");
+            lastSubject = null;
+            lastPredicate = null;
+        }
+    }
+
+    private void writeNode(Node node) throws IOException {
+        if (node.isURI()) {
+            writeURI(node.getURI());
+        } else if (node.isLiteral()) {
+            writeLiteral(node);
+        } else if (node.isBlank()) {
+            writer.write("_:");
+            writeBlankLabel(node.getBlankNodeLabel());
+        } else {
+            throw new IllegalArgumentException("variables can not be written: " + node);
+        }
+    }
+
+    private void writeURI(String uri) throws IOException {
+        if (turtle) {
+            int split = splitNamespace(uri);
+            String prefix = namespaces.get(uri.substring(0, split));
+            if (prefix != null) {
+                writer.write(prefix);
+                writer.write(':');
+                writer.write(uri, split, uri.length() - split);
+                return;
+            }
+        }
+        writeIRI(uri);
+    }
+
+    private void writeLiteral(Node node) throws IOException {
+        writer.write('"');
+        String lex = node.getLiteralLexicalForm();
+        for (int i = 0; i < lex.length(); i++) {
+            char c = lex.charAt(i);
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        writeUnicodeEscape(c);
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+
+        String lang = node.getLiteralLanguage();
+        String datatype = node.getLiteralDatatypeURI();
+        if (lang != null && !lang.isEmpty()) {
+            writer.write('@');
+            writer.write(lang);
+        } else if (datatype != null && !datatype.equals(XSD_STRING)) {
+            writer.write("^^");
+            writeURI(datatype);
+        }
+    }
+
+    private void writeIRI(String uri) throws IOException {
+        writer.write('<');
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c <= 0x20 || "<>\"{}|^`\\".indexOf(c) >= 0) {
+                writeUnicodeEscape(c);
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('>');
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        writer.write("\\u");
+        String hex = Integer.toHexString(c);
+        for (int i = hex.length(); i < 4; i++) {
+            writer.write('0');
+        }
+        writer.write(hex);
+    }
+
+    //labels of jena contain characters which are not allowed,
+    //they are hex encoded (also 'x' itself, so labels stay distinct)
+    private void writeBlankLabel(String label) throws IOException {
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c < 0x80 && Character.isLetterOrDigit(c) && c != 'x') {
+                writer.write(c);
+            } else {
+                writer.write('x');
+                writer.write(Integer.toHexString(c));
+                writer.write('x');
+            }
+        }
+    }
+
+    //where the local name starts, the namespace is the part before;
+    //the uri length if the local name can not be written in Turtle
+    private static int splitNamespace(String uri) {
+        int split = uri.length();
+        while (split > 0) {
+            char c = uri.charAt(split - 1);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '-') {
+                split--;
+            } else {
+                break;
+            }
+        }
+        //a local name does not start with '-'
+        while (split < uri.length() && uri.charAt(split) == '-') {
+            split++;
+        }
+        return split;
+    }
+
+    private static boolean isPrefixName(String prefix) {
+        if (prefix.isEmpty()) {
+            return true;
+        }
+        if (!Character.isLetter(prefix.charAt(0)) || prefix.endsWith(".")) {
+            return false;
+        }
+        for (int i = 1; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    //terminates the last statement, flushes and closes the stream
+    @Override
+    public void close() throws IOException {
+        if (turtle) {
+            terminate();
+        }
+        writer.close();
+    }
+
+}
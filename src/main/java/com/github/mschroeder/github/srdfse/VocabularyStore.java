@@ -0,0 +1,85 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The preset vocabularies (xsd, foaf, dcterms, ...) shared by all web
+ * sessions. Each one is parsed once and kept as a read-only ontology;
+ * sessions importing it only register a reference, see
+ * {@link IdTable#register(Ontology)}.
+ * Every vocabulary has an own id table whose range starts at
+ * {@link #FIRST_ID} plus a slot derived from the resource path. So the ids
+ * never collide with the ids of a session and stay the same after a restart,
+ * whatever vocabulary is loaded first; stored sessions refer to them.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class VocabularyStore {
+
+    public static final long FIRST_ID = 1L << 40;
+
+    //ids per vocabulary
+    private static final int SLOT_BITS = 20;
+
+    private static final Map<String, Ontology> vocabularies = new HashMap<>();
+    private static final Set<Long> slots = new HashSet<>();
+
+    /**
+     * Returns the shared ontology of the preset, it is loaded on first use.
+     * It must not be changed.
+     * @param resourcePath e.g. "/vocab/foaf.ttl", or the key of an imported
+     * file in the {@link OntologyCache}
+     * @return null if it is an imported file which is not known anymore
+     */
+    public static synchronized Ontology get(String resourcePath) {
+        if (resourcePath.startsWith(OntologyCache.KEY_PREFIX)) {
+            return OntologyCache.get(resourcePath);
+        }
+        Ontology onto = vocabularies.get(resourcePath);
+        if (onto == null) {
+            onto = load(resourcePath);
+            vocabularies.put(resourcePath, onto);
+        }
+        return onto;
+    }
+
+    private static Ontology load(String resourcePath) {
+        //single pass with TBox and ABox, the prefix is the file name
+        Ontology onto;
+        try (InputStream is = VocabularyStore.class.getResourceAsStream(resourcePath)) {
+            if (is == null) {
+                throw new IllegalArgumentException("unknown vocabulary " + resourcePath);
+            }
+            onto = Ontology.loadTTL(resourcePath, is);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        //ids are assigned before it is marked as shared
+        IdTable ids = new IdTable();
+        ids.reserve(FIRST_ID + (slot(resourcePath) << SLOT_BITS));
+        ids.register(onto);
+        onto.setVocabulary(resourcePath);
+        return onto;
+    }
+
+    private static long slot(String resourcePath) {
+        CRC32 crc = new CRC32();
+        crc.update(resourcePath.getBytes(StandardCharsets.UTF_8));
+        long mask = (1L << SLOT_BITS) - 1;
+        long slot = crc.getValue() & mask;
+        //unlikely, the next free one
+        while (!slots.add(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
@@ -66,7 +66,7 @@ Vue.component('tree-item', {
             var uri = this.ontology.uri + this.item.localname;
             event.dataTransfer.setData("text/uri-list", uri);
             event.dataTransfer.setData("text/plain", uri);
-            event.dataTransfer.setData("source", this.item.hashCode);
+            event.dataTransfer.setData("source", this.item.id);
             event.dataTransfer.setData("sourceTreeType", this.treeType);
         },
         dragover: function(event) {
@@ -74,15 +74,15 @@ Vue.component('tree-item', {
         },
         drop: function(dstTreeType, dst, onto, event) {
             event.preventDefault();
-            var srcHashCode = event.dataTransfer.getData("source");
+            var srcId = event.dataTransfer.getData("source");
             var sourceTreeType = event.dataTransfer.getData("sourceTreeType");
             this.$root.dragAndDrop(
-                    sourceTreeType, srcHashCode, 
-                    dstTreeType, dst.hashCode !== undefined ? dst.hashCode : onto.hashCode
+                    sourceTreeType, srcId, 
+                    dstTreeType, dst.id !== undefined ? dst.id : onto.id
             );
         },
         remove: function() {
-            if(!this.item.hashCode) {
+            if(!this.item.id) {
                 //its a ontology
                 this.$root.removeResource(this.ontology);
             } else {
@@ -95,13 +95,164 @@ Vue.component('tree-item', {
     }
 });
 
+//patch handling: state is changed locally by the operations the server sends
+
+function compareResources(a, b) {
+    return a.localname.toLowerCase().localeCompare(b.localname.toLowerCase());
+}
+
+function findOntology(state, id) {
+    for(var i = 0; i < state.ontologies.length; i++) {
+        if(state.ontologies[i].id === id) {
+            return state.ontologies[i];
+        }
+    }
+    return undefined;
+}
+
+//returns {node, list} where list is the children array containing the node
+function findResource(state, id) {
+    var stack = [];
+    state.ontologies.forEach(function(onto) {
+        stack.push(onto.classes, onto.properties);
+    });
+    while(stack.length > 0) {
+        var parent = stack.pop();
+        for(var i = 0; i < parent.children.length; i++) {
+            var child = parent.children[i];
+            if(child.id === id) {
+                return { node: child, list: parent.children };
+            }
+            stack.push(child);
+        }
+    }
+    return undefined;
+}
+
+function insertResource(state, ontologyId, res) {
+    var onto = findOntology(state, ontologyId);
+    if(onto === undefined) {
+        return false;
+    }
+    
+    var parent = res.type === 'Property' ? onto.properties : onto.classes;
+    if(res.parent !== undefined) {
+        var found = findResource(state, res.parent.id);
+        if(found === undefined) {
+            return false;
+        }
+        parent = found.node;
+    }
+    
+    var pos = 0;
+    while(pos < parent.children.length && compareResources(parent.children[pos], res) < 0) {
+        pos++;
+    }
+    parent.children.splice(pos, 0, res);
+    return true;
+}
+
+function removeResource(state, id) {
+    var found = findResource(state, id);
+    if(found !== undefined) {
+        found.list.splice(found.list.indexOf(found.node), 1);
+    }
+    return found;
+}
+
+var patchops = {
+    upsert: function(op, state) {
+        var res = op.resource;
+        var found = findResource(state, res.id);
+        if(found === undefined) {
+            return insertResource(state, op.ontology, res);
+        }
+        
+        var oldParent = found.node.parent !== undefined ? found.node.parent.id : undefined;
+        var newParent = res.parent !== undefined ? res.parent.id : undefined;
+        if(oldParent !== newParent) {
+            //keep the subtree the client already has
+            res.children = found.node.children;
+            return patchops.reparent(op, state);
+        }
+        
+        //children are not sent when only the resource changed
+        Object.keys(res).forEach(function(key) {
+            if(key !== 'children') {
+                Vue.set(found.node, key, res[key]);
+            }
+        });
+        ['domain', 'range', 'prefix', 'uri'].forEach(function(key) {
+            if(res[key] === undefined && found.node[key] !== undefined) {
+                Vue.delete(found.node, key);
+            }
+        });
+        return true;
+    },
+    reparent: function(op, state) {
+        removeResource(state, op.resource.id);
+        return insertResource(state, op.ontology, op.resource);
+    },
+    remove: function(op, state) {
+        removeResource(state, op.id);
+        return true;
+    },
+    addOntology: function(op, state) {
+        if(findOntology(state, op.ontology.id) === undefined) {
+            state.ontologies.push(op.ontology);
+        }
+        return true;
+    },
+    removeOntology: function(op, state) {
+        var onto = findOntology(state, op.id);
+        if(onto !== undefined) {
+            state.ontologies.splice(state.ontologies.indexOf(onto), 1);
+            state.ontologies.forEach(function(o, index) {
+                o.index = index;
+            });
+        }
+        return true;
+    }
+};
+
+function requestSnapshot(vue, $socket) {
+    if(!vue.awaitingSnapshot) {
+        vue.awaitingSnapshot = true;
+        $socket.sendObj({method: 'snapshot'});
+    }
+}
+
 //methods for websocket
 var wsmethods = {
     init: function(data, vue, $socket) {
         vue.state = data.state;
+        vue.awaitingSnapshot = false;
+    },
+    patch: function(data, vue, $socket) {
+        if(vue.state === undefined || vue.awaitingSnapshot || data.version <= vue.state.version) {
+            //the snapshot will contain it
+            return;
+        }
+        
+        if(data.version !== vue.state.version + 1) {
+            //missed a patch
+            requestSnapshot(vue, $socket);
+            return;
+        }
+        
+        for(var i = 0; i < data.ops.length; i++) {
+            var op = data.ops[i];
+            if(!patchops[op.op](op, vue.state)) {
+                //something is not where the server expects it
+                requestSnapshot(vue, $socket);
+                return;
+            }
+        }
+        vue.state.version = data.version;
     },
     created: function(data, vue, $socket) {
-        vue.res = data.resource;
+        var found = vue.state !== undefined ? findResource(vue.state, data.resource.id) : undefined;
+        vue.res = found !== undefined ? found.node : data.resource;
         vue.$refs.comment.focus();
     },
     ontology: function(data, vue, $socket) {
@@ -110,7 +261,7 @@ var wsmethods = {
     },
     removed: function(data, vue, $socket) {
         //removed one is currently focused
-        if(vue.res.hashCode === data.resource.hashCode) {
+        if(vue.res.id === data.resource.id) {
             vue.newResource(vue.res.type);
         }
     },
@@ -153,6 +304,7 @@ var vm = new Vue({
         connected: false,
         message: 'Hello Vue!',
         state: undefined,
+        awaitingSnapshot: false,
         
         //resource creation or focused
         res: {
@@ -174,7 +326,7 @@ var vm = new Vue({
         },
         
         input: function(labelOrLocalname) {
-            if(!this.res.hashCode) {
+            if(!this.res.id) {
                 switch(labelOrLocalname) {
                     case 'label':
                         this.res.localname = encodeURIComponent(camelize(this.res.label[this.lang], this.res.type === 'Class'));
@@ -205,7 +357,7 @@ var vm = new Vue({
         },
         
         createResource: function() {
-            if(!this.res.hashCode) {
+            if(!this.res.id) {
                 //resource has to be created
                 this.$socket.sendObj({ method: 'createResource', 'resource': this.res });
                 
@@ -218,7 +370,7 @@ var vm = new Vue({
         },
         
         changed: function(what) {
-            if(this.res.hashCode) {
+            if(this.res.id) {
                 this.$socket.sendObj({ method: 'changed', 'resource': this.res, 'what': what, 'lang': this.lang });
             }
         },
@@ -232,8 +384,8 @@ var vm = new Vue({
                 event.preventDefault();
             }
             
-            if(this.res.hashCode && this.res.type === 'Property') {
-                this.$socket.sendObj({ method: 'reset', 'what': what, hashCode: this.res.hashCode });
+            if(this.res.id && this.res.type === 'Property') {
+                this.$socket.sendObj({ method: 'reset', 'what': what, id: this.res.id });
             }
         },
         
@@ -267,12 +419,12 @@ var vm = new Vue({
             });
         },
         
-        dragAndDrop: function(srcTreeType, srcHashCode, dstTreeType, dstHashCode) {
+        dragAndDrop: function(srcTreeType, srcId, dstTreeType, dstId) {
             this.$socket.sendObj({ method: 'dragAndDrop',
                 srcTreeType: srcTreeType,
-                srcHashCode: srcHashCode,
+                srcId: srcId,
                 dstTreeType: dstTreeType,
-                dstHashCode: dstHashCode
+                dstId: dstId
             });
         }
     }
@@ -0,0 +1,199 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A session is restored from its snapshot and the edits logged after it,
+ * with the same ids.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class DirectorySessionStoreTest {
+
+    private static final String SESSION_ID = "abc123";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JSONObject createClass(String localname) {
+        JSONObject resObj = new JSONObject();
+        resObj.put("type", "Class");
+        resObj.put("localname", localname);
+        resObj.put("label", new JSONObject().put("en", localname.toLowerCase()));
+        resObj.put("comment", new JSONObject());
+
+        JSONObject edit = new JSONObject();
+        edit.put("method", "createResource");
+        edit.put("resource", resObj);
+        return edit;
+    }
+
+    private static JSONObject rename(long id, String localname) {
+        JSONObject resObj = new JSONObject();
+        resObj.put("id", id);
+        resObj.put("type", "Class");
+        resObj.put("localname", localname);
+        resObj.put("label", new JSONObject());
+        resObj.put("comment", new JSONObject());
+
+        JSONObject edit = new JSONObject();
+        edit.put("method", "changed");
+        edit.put("resource", resObj);
+        edit.put("what", "localname");
+        edit.put("lang", "en");
+        return edit;
+    }
+
+    //applied to the session and logged, like the room actor does
+    private static Resource edit(OntologySession session, SessionStore store, JSONObject edit) {
+        Resource changed = session.apply(edit);
+        store.appendEdit(SESSION_ID, edit);
+        return changed;
+    }
+
+    private static List<String> rootClasses(OntologySession session) {
+        List<String> names = new ArrayList<>();
+        for (Resource res : session.getUserOntology().getRootClasses()) {
+            names.add(res.getId() + " " + res.getLocalname() + " " + res.getLabel());
+        }
+        return names;
+    }
+
+    @Test
+    public void snapshotAndEditsAreReplayed() throws IOException {
+        File dir = folder.newFolder("sessions");
+
+        OntologySession session = new OntologySession();
+        SessionStore store = new DirectorySessionStore(dir);
+        Resource person = session.apply(createClass("Person"));
+        store.saveSnapshot(SESSION_ID, session);
+
+        edit(session, store, createClass("Place"));
+        edit(session, store, rename(person.getId(), "Human"));
+        assertTrue(store.contains(SESSION_ID));
+        store.close();
+
+        //as after a restart
+        SessionStore reopened = new DirectorySessionStore(dir);
+        assertTrue(reopened.contains(SESSION_ID));
+        OntologySession loaded = reopened.load(SESSION_ID);
+        assertNotNull(loaded);
+        assertEquals(rootClasses(session), rootClasses(loaded));
+        assertEquals(session.getVersion(), loaded.getVersion());
+
+        //new ids do not collide with the restored ones
+        Resource created = loaded.apply(createClass("Thing"));
+        assertEquals(session.apply(createClass("Thing")).getId(), created.getId());
+        reopened.close();
+    }
+
+    @Test
+    public void loadWaitsForQueuedWrites() {
+        OntologySession session = new OntologySession();
+        SessionStore store = new DirectorySessionStore(new File(folder.getRoot(), "sessions"));
+        store.saveSnapshot(SESSION_ID, session);
+        for (int i = 0; i < 100; i++) {
+            edit(session, store, createClass("C" + i));
+        }
+
+        OntologySession loaded = store.load(SESSION_ID);
+        assertEquals(rootClasses(session), rootClasses(loaded));
+        store.close();
+    }
+
+    @Test
+    public void deletedSessionStaysDeleted() {
+        File dir = new File(folder.getRoot(), "sessions");
+
+        OntologySession session = new OntologySession();
+        SessionStore store = new DirectorySessionStore(dir);
+        store.saveSnapshot(SESSION_ID, session);
+        edit(session, store, createClass("Person"));
+
+        store.delete(SESSION_ID);
+        //e.g. an edit which was handled while the session was deleted
+        edit(session, store, createClass("Place"));
+        store.saveSnapshot(SESSION_ID, session);
+
+        assertFalse(store.contains(SESSION_ID));
+        assertNull(store.load(SESSION_ID));
+        store.close();
+
+        assertFalse(new File(dir, SESSION_ID).exists());
+        SessionStore reopened = new DirectorySessionStore(dir);
+        assertFalse(reopened.contains(SESSION_ID));
+        reopened.close();
+    }
+
+    @Test
+    public void newSnapshotReplacesTheOldOne() throws IOException {
+        File dir = folder.newFolder("sessions");
+
+        OntologySession session = new OntologySession();
+        SessionStore store = new DirectorySessionStore(dir);
+        store.saveSnapshot(SESSION_ID, session);
+        edit(session, store, createClass("Person"));
+        store.saveSnapshot(SESSION_ID, session);
+        edit(session, store, createClass("Place"));
+        store.close();
+
+        //only the last generation is left, a snapshot queued in the same batch may have been skipped
+        List<String> files = new ArrayList<>(Arrays.asList(new File(dir, SESSION_ID).list()));
+        Collections.sort(files);
+        assertEquals(2, files.size());
+        assertTrue(files.get(1).startsWith("snapshot."));
+        String generation = files.get(1).substring("snapshot.".length());
+        assertEquals("edits." + generation + ".log", files.get(0));
+
+        SessionStore reopened = new DirectorySessionStore(dir);
+        assertEquals(rootClasses(session), rootClasses(reopened.load(SESSION_ID)));
+        reopened.close();
+    }
+
+    @Test
+    public void incompleteLastEditIsSkipped() throws IOException {
+        File dir = folder.newFolder("sessions");
+
+        OntologySession session = new OntologySession();
+        SessionStore store = new DirectorySessionStore(dir);
+        store.saveSnapshot(SESSION_ID, session);
+        edit(session, store, createClass("Person"));
+        store.close();
+
+        //as if the server stopped in the middle of a write
+        Files.write(new File(dir, SESSION_ID + "/edits.1.log").toPath(),
+                "{\"method\":\"createRes".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        SessionStore reopened = new DirectorySessionStore(dir);
+        assertEquals(rootClasses(session), rootClasses(reopened.load(SESSION_ID)));
+        reopened.close();
+    }
+
+    @Test
+    public void unknownAndInvalidIdsAreNotFound() {
+        SessionStore store = new DirectorySessionStore(new File(folder.getRoot(), "sessions"));
+        assertFalse(store.contains("unknown"));
+        assertNull(store.load("unknown"));
+        assertFalse(store.contains("../etc"));
+        assertNull(store.load("../etc"));
+        store.close();
+    }
+
+}
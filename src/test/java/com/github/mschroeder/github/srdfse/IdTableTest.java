@@ -0,0 +1,81 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Ontologies and resources are found by their ids, which are not reused.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class IdTableTest {
+
+    private static final String TTL
+            = "@prefix ex: <http://example.org/ex#> .\n"
+            + "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+            + "ex:A a rdfs:Class .\n"
+            + "ex:B a rdfs:Class .\n"
+            + "ex:B rdfs:subClassOf ex:A .\n"
+            + "ex:C a rdfs:Class .\n";
+
+    private static Ontology load() {
+        return Ontology.loadTTL("ex.ttl", new ByteArrayInputStream(TTL.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void everyResourceIsFoundById() {
+        IdTable table = new IdTable();
+        Ontology onto = load();
+        table.register(onto);
+
+        assertSame(onto, table.getOntology(onto.getId()));
+
+        Set<Long> ids = new HashSet<>();
+        ids.add(onto.getId());
+        for (Resource res : onto.listClasses()) {
+            assertTrue(res.getId() > 0);
+            assertTrue(ids.add(res.getId()));
+            assertSame(res, table.getResource(res.getId()));
+            assertSame(res, onto.findById(res.getId()));
+        }
+        assertEquals(4, ids.size());
+    }
+
+    @Test
+    public void idsAreNotReused() {
+        IdTable table = new IdTable();
+        Ontology first = load();
+        table.register(first);
+        long last = table.getLastId();
+
+        table.unregister(first);
+        assertNull(table.getOntology(first.getId()));
+        assertNull(table.getResource(first.findClassByLocalname("A").getId()));
+
+        Ontology second = load();
+        table.register(second);
+        assertTrue(second.getId() > last);
+    }
+
+    @Test
+    public void reservedIdsAreNotHandedOut() {
+        IdTable table = new IdTable();
+        table.reserve(100);
+
+        Ontology onto = load();
+        table.register(onto);
+
+        assertTrue(onto.getId() > 100);
+        for (Resource res : onto.listClasses()) {
+            assertTrue(res.getId() > 100);
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * The compact array behaves like an insertion ordered map. Removing entries
+ * with the iterator of the entry set keeps the other entries and the text
+ * of the map in sync.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class LangStringTest {
+
+    private static LangString create() {
+        LangString ls = new LangString();
+        ls.put("en", "house");
+        ls.put("de", "Haus");
+        ls.put("fr", "maison");
+        ls.put("", "building");
+        return ls;
+    }
+
+    @Test
+    public void removeWithIterator() {
+        //langtags which are removed while iterating
+        List<List<String>> table = Arrays.asList(
+                Arrays.asList(),
+                Arrays.asList("en"),
+                Arrays.asList("fr"),
+                Arrays.asList(""),
+                Arrays.asList("en", "de"),
+                Arrays.asList("de", ""),
+                Arrays.asList("en", "de", "fr", "")
+        );
+
+        for (List<String> removals : table) {
+            LangString ls = create();
+            Map<String, String> expected = new LinkedHashMap<>(ls);
+            //computed before, has to be computed again
+            ls.toString();
+
+            Iterator<Entry<String, String>> iter = ls.entrySet().iterator();
+            int seen = 0;
+            while (iter.hasNext()) {
+                Entry<String, String> e = iter.next();
+                seen++;
+                if (removals.contains(e.getKey())) {
+                    iter.remove();
+                    expected.remove(e.getKey());
+                }
+            }
+
+            assertEquals(4, seen);
+            assertEquals(expected, ls);
+            assertEquals(expected.size(), ls.size());
+            for (String lang : removals) {
+                assertFalse(ls.containsKey(lang));
+            }
+            assertEquals(expected(expected), ls.toString());
+        }
+    }
+
+    //the longest one, see LangString.toString()
+    private static String expected(Map<String, String> map) {
+        Entry<String, String> best = null;
+        for (Entry<String, String> e : map.entrySet()) {
+            if (best == null || e.getValue().length() > best.getValue().length()) {
+                best = e;
+            }
+        }
+        if (best == null) {
+            return "";
+        }
+        return best.getKey().isEmpty() ? best.getValue() : "\"" + best.getValue() + "\"@" + best.getKey();
+    }
+
+    @Test
+    public void sameAsLinkedHashMap() {
+        String[] langs = {"en", "de", "fr", "", "es", "it"};
+        Random random = new Random(42);
+        LangString ls = new LangString();
+        Map<String, String> expected = new LinkedHashMap<>();
+
+        for (int i = 0; i < 10000; i++) {
+            String lang = langs[random.nextInt(langs.length)];
+            int op = random.nextInt(4);
+            if (op == 0) {
+                assertEquals(expected.remove(lang), ls.remove(lang));
+            } else if (op == 1 && random.nextInt(20) == 0) {
+                expected.clear();
+                ls.clear();
+            } else {
+                String value = lang + "-" + random.nextInt(100);
+                assertEquals(expected.put(lang, value), ls.put(lang, value));
+            }
+
+            //same entries in the same order
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(ls.entrySet()));
+            assertEquals(expected, ls);
+            assertEquals(expected.hashCode(), ls.hashCode());
+            assertEquals(expected(expected), ls.toString());
+        }
+    }
+
+    @Test
+    public void textFollowsChanges() {
+        LangString ls = create();
+        assertEquals("building", ls.toString());
+
+        ls.put("de", "Wohngebaeude");
+        assertEquals("\"Wohngebaeude\"@de", ls.toString());
+
+        ls.remove("de");
+        assertEquals("building", ls.toString());
+
+        ls.clear();
+        assertEquals("", ls.toString());
+        assertTrue(ls.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removeTwice() {
+        Iterator<Entry<String, String>> iter = create().entrySet().iterator();
+        iter.next();
+        iter.remove();
+        iter.remove();
+    }
+
+    @Test
+    public void nullLangtagInJSON() {
+        LangString ls = new LangString();
+        ls.put(null, "value");
+        ls.put("en", "english");
+
+        JSONObject json = ls.toJSON();
+        assertEquals("value", json.getString(""));
+        assertEquals("english", json.getString("en"));
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Both directions of a link index agree after every add and remove, also
+ * for hubs with more neighbours than are scanned.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class LinkIndexTest {
+
+    private static List<Resource> instances(int count) {
+        Ontology onto = new Ontology();
+        List<Resource> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Resource res = new Resource(onto, Resource.Type.Instance);
+            res.setLocalname("i" + i);
+            result.add(res);
+        }
+        return result;
+    }
+
+    //every link is found from its subject and from its object
+    private static void assertSymmetric(LinkIndex index, List<Resource> resources) {
+        int links = 0;
+        for (Resource s : resources) {
+            for (Resource o : index.getObjects(s)) {
+                assertTrue(index.getSubjects(o).contains(s));
+                assertTrue(index.contains(s, o));
+                assertTrue(index.contains(new Link(s, o)));
+                links++;
+            }
+            assertEquals(index.getObjects(s).size(), new HashSet<>(index.getObjects(s)).size());
+        }
+        for (Resource o : resources) {
+            for (Resource s : index.getSubjects(o)) {
+                assertTrue(index.getObjects(s).contains(o));
+            }
+        }
+        assertEquals(links, index.size());
+
+        int iterated = 0;
+        for (Link link : index) {
+            assertTrue(index.contains(link.getSource(), link.getTarget()));
+            iterated++;
+        }
+        assertEquals(links, iterated);
+    }
+
+    @Test
+    public void addAndRemoveHub() {
+        //1 neighbour, a list, a list which is hashed
+        for (int count : new int[]{1, 2, 8, 9, 100}) {
+            List<Resource> res = instances(count + 1);
+            Resource hub = res.get(0);
+            LinkIndex index = new LinkIndex();
+
+            for (int i = 1; i <= count; i++) {
+                assertTrue(index.add(hub, res.get(i)));
+                assertTrue(index.add(res.get(i), hub));
+                assertFalse(index.add(hub, res.get(i)));
+            }
+            assertEquals(count * 2, index.size());
+            assertEquals(count, index.getObjects(hub).size());
+            assertEquals(count, index.getSubjects(hub).size());
+            assertSymmetric(index, res);
+
+            //every second one, then the rest
+            for (int i = 1; i <= count; i += 2) {
+                assertTrue(index.remove(hub, res.get(i)));
+                assertFalse(index.remove(hub, res.get(i)));
+                assertFalse(index.contains(hub, res.get(i)));
+                assertTrue(index.contains(res.get(i), hub));
+            }
+            assertSymmetric(index, res);
+            for (int i = 1; i <= count; i++) {
+                index.remove(hub, res.get(i));
+                assertTrue(index.remove(res.get(i), hub));
+            }
+
+            assertEquals(0, index.size());
+            assertTrue(index.getObjects(hub).isEmpty());
+            assertTrue(index.getSubjects(hub).isEmpty());
+            assertSymmetric(index, res);
+        }
+    }
+
+    @Test
+    public void manyToMany() {
+        List<Resource> res = instances(30);
+        LinkIndex index = new LinkIndex();
+
+        for (int i = 0; i < res.size(); i++) {
+            for (int j = 0; j < res.size(); j += 1 + i % 3) {
+                index.add(res.get(i), res.get(j));
+            }
+        }
+        assertSymmetric(index, res);
+
+        for (int i = 0; i < res.size(); i += 2) {
+            for (int j = 0; j < res.size(); j++) {
+                index.remove(res.get(i), res.get(j));
+            }
+            assertTrue(index.getObjects(res.get(i)).isEmpty());
+        }
+        assertSymmetric(index, res);
+    }
+
+    @Test
+    public void neighboursOfAProperty() {
+        List<Resource> res = instances(3);
+        Resource alice = res.get(0);
+        Resource bob = res.get(1);
+        Resource carol = res.get(2);
+        Resource knows = new Resource(new Ontology(), Resource.Type.Property);
+
+        assertTrue(knows.getObjects(alice).isEmpty());
+
+        knows.addLink(alice, bob);
+        knows.addLink(alice, carol);
+        knows.addLink(bob, carol);
+        assertEquals(Arrays.asList(bob, carol), knows.getObjects(alice));
+        assertEquals(Arrays.asList(alice, bob), knows.getSubjects(carol));
+        assertEquals(2, knows.getLinksOfSubject(alice).size());
+        assertEquals(3, knows.getLinks().size());
+
+        knows.removeLink(alice, carol);
+        assertEquals(Arrays.asList(bob), knows.getObjects(alice));
+        assertEquals(Arrays.asList(bob), knows.getSubjects(carol));
+        assertTrue(knows.getSubjects(alice).isEmpty());
+        assertEquals(2, knows.getLinks().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsCanNotBeChanged() {
+        List<Resource> res = instances(2);
+        LinkIndex index = new LinkIndex();
+        index.add(res.get(0), res.get(1));
+        index.getObjects(res.get(0)).clear();
+    }
+
+    @Test
+    public void removedInstancesLoseTheirLinks() {
+        Ontology onto = new Ontology();
+        onto.setPrefix("ex");
+        onto.setUri("http://example.org/ex");
+        onto.setFragment("#");
+
+        Resource person = new Resource(onto, Resource.Type.Class);
+        person.setLocalname("Person");
+        onto.addRoot(person);
+
+        Resource knows = new Resource(onto, Resource.Type.Property);
+        knows.setLocalname("knows");
+        onto.addRoot(knows);
+        Resource likes = new Resource(onto, Resource.Type.Property);
+        likes.setLocalname("likes");
+        onto.addRoot(likes);
+
+        List<Resource> people = new ArrayList<>();
+        for (String name : new String[]{"alice", "bob", "carol"}) {
+            Resource inst = new Resource(onto, Resource.Type.Instance);
+            inst.setLocalname(name);
+            person.addInstance(inst);
+            people.add(inst);
+        }
+        Resource alice = people.get(0);
+        Resource bob = people.get(1);
+        Resource carol = people.get(2);
+
+        knows.addLink(alice, bob);
+        knows.addLink(carol, alice);
+        knows.addLink(bob, carol);
+        likes.addLink(bob, alice);
+        assertEquals(Arrays.asList(knows, likes), onto.getIndex().getLinkedProperties(alice));
+
+        onto.removeInstances(Arrays.asList(alice));
+
+        assertFalse(person.getInstances().contains(alice));
+        assertTrue(onto.getIndex().getLinkedProperties(alice).isEmpty());
+        assertEquals(1, knows.getLinks().size());
+        assertTrue(knows.getLinks().contains(new Link(bob, carol)));
+        assertTrue(likes.getLinks().isEmpty());
+        assertEquals(Arrays.asList(knows), onto.getIndex().getLinkedProperties(bob));
+    }
+
+}
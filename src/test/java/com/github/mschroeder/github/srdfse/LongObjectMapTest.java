@@ -0,0 +1,137 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Removing entries of a run of colliding keys must not hide the keys
+ * after them.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class LongObjectMapTest {
+
+    //the slot of a key in a table with 16 slots (see LongObjectMap)
+    private static int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & 15;
+    }
+
+    //keys with the same slot, found by trying
+    private static long[] colliding(int count) {
+        List<Long> keys = new ArrayList<>();
+        int home = slot(1);
+        for (long key = 1; keys.size() < count; key++) {
+            if (slot(key) == home) {
+                keys.add(key);
+            }
+        }
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = keys.get(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void removeFromRunOfCollisions() {
+        long[] keys = colliding(5);
+
+        //positions in the run which are removed
+        int[][] table = {
+            {0},
+            {2},
+            {4},
+            {0, 1},
+            {1, 3},
+            {4, 0},
+            {0, 1, 2, 3, 4},
+            {4, 3, 2, 1, 0},
+        };
+
+        for (int[] removals : table) {
+            //few entries, so the table keeps its 16 slots
+            LongObjectMap<String> map = new LongObjectMap<>();
+            for (long key : keys) {
+                map.put(key, "v" + key);
+            }
+
+            boolean[] removed = new boolean[keys.length];
+            for (int i : removals) {
+                assertEquals("v" + keys[i], map.remove(keys[i]));
+                removed[i] = true;
+            }
+
+            assertEquals(keys.length - removals.length, map.size());
+            for (int i = 0; i < keys.length; i++) {
+                if (removed[i]) {
+                    assertNull(map.get(keys[i]));
+                    assertFalse(map.containsKey(keys[i]));
+                } else {
+                    assertEquals("v" + keys[i], map.get(keys[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removeWrapsAroundTheTable() {
+        //a run which starts at the last slot continues at the first one
+        List<Long> last = new ArrayList<>();
+        List<Long> first = new ArrayList<>();
+        for (long key = 1; last.size() < 3 || first.size() < 1; key++) {
+            if (slot(key) == 15 && last.size() < 3) {
+                last.add(key);
+            } else if (slot(key) == 0 && first.size() < 1) {
+                first.add(key);
+            }
+        }
+
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        last.forEach(key -> map.put(key, key));
+        first.forEach(key -> map.put(key, key));
+
+        map.remove(last.get(0));
+        assertNull(map.get(last.get(0)));
+        assertEquals(last.get(1), map.get(last.get(1)));
+        assertEquals(last.get(2), map.get(last.get(2)));
+        assertEquals(first.get(0), map.get(first.get(0)));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void sameAsHashMap() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 100000; i++) {
+            long key = 1 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, key), map.put(key, key));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 5000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reservedKey() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+        map.put(0, "zero");
+    }
+
+}
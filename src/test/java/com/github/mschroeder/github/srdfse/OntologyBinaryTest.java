@@ -0,0 +1,171 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * An ontology read back from its binary form has the same trees, labels,
+ * instances and links.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OntologyBinaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Ontology create() {
+        Ontology onto = new Ontology();
+        onto.setPrefix("ex");
+        onto.setUri("http://example.org/ex");
+        onto.setFragment("#");
+        onto.setInstancePrefix("data");
+        onto.setInstanceNamespace("http://example.org/data/");
+
+        Resource person = new Resource(onto, Resource.Type.Class);
+        person.setLocalname("Person");
+        person.getLabel().put("en", "person");
+        person.getLabel().put("de", "Person");
+        person.getComment().put("en", "a human being");
+        onto.addRoot(person);
+
+        Resource student = new Resource(onto, Resource.Type.Class);
+        student.setLocalname("Student");
+        person.addChild(student);
+
+        Resource knows = new Resource(onto, Resource.Type.Property);
+        knows.setLocalname("knows");
+        knows.setDomain(person);
+        knows.setRange(student);
+        onto.addRoot(knows);
+
+        Resource alice = new Resource(onto, Resource.Type.Instance);
+        alice.setLocalname("alice");
+        person.addInstance(alice);
+
+        Resource bob = new Resource(onto, Resource.Type.Instance);
+        bob.setLocalname("bob");
+        student.addInstance(bob);
+
+        knows.addLink(alice, bob);
+
+        Resource age = new Resource(onto, Resource.Type.Property);
+        age.setLocalname("age");
+        onto.addRoot(age);
+
+        Resource literal = new Resource(onto, Resource.Type.Literal);
+        literal.getComment().put("datatype", "http://www.w3.org/2001/XMLSchema#int");
+        literal.getComment().put("", "42");
+        age.addLink(alice, literal);
+        return onto;
+    }
+
+    private static Resource property(Ontology onto, String localname) {
+        for (Resource prop : onto.getRootProperties()) {
+            if (prop.getLocalname().equals(localname)) {
+                return prop;
+            }
+        }
+        return null;
+    }
+
+    private static Ontology roundTrip(Ontology onto) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        onto.saveBinary(baos);
+        List<Ontology> read = OntologyBinary.read(new ByteArrayInputStream(baos.toByteArray()), false);
+        return read.get(0);
+    }
+
+    @Test
+    public void namespacesAreKept() throws IOException {
+        Ontology read = roundTrip(create());
+
+        assertEquals("ex", read.getPrefix());
+        assertEquals("http://example.org/ex", read.getUri());
+        assertEquals("#", read.getFragment());
+        assertEquals("data", read.getInstancePrefix());
+        assertEquals("http://example.org/data/", read.getInstanceNamespace());
+    }
+
+    @Test
+    public void treesAndLabelsAreKept() throws IOException {
+        Ontology read = roundTrip(create());
+
+        assertEquals(1, read.getRootClasses().size());
+        Resource person = read.getRootClasses().get(0);
+        assertEquals("Person", person.getLocalname());
+        assertEquals("person", person.getLabel().get("en"));
+        assertEquals("Person", person.getLabel().get("de"));
+        assertEquals("a human being", person.getComment().get("en"));
+
+        assertEquals(1, person.getChildren().size());
+        Resource student = person.getChildren().get(0);
+        assertEquals("Student", student.getLocalname());
+        assertTrue(student.getParent() == person);
+
+        assertEquals(2, read.getRootProperties().size());
+        Resource knows = property(read, "knows");
+        assertEquals("knows", knows.getLocalname());
+        assertTrue(knows.getDomain() == person);
+        assertTrue(knows.getRange() == student);
+    }
+
+    @Test
+    public void instancesAndLinksAreKept() throws IOException {
+        Ontology read = roundTrip(create());
+
+        Resource alice = read.findByUri("http://example.org/data/alice");
+        Resource bob = read.findByUri("http://example.org/data/bob");
+        assertNotNull(alice);
+        assertNotNull(bob);
+        assertEquals("Person", alice.getParent().getLocalname());
+        assertEquals("Student", bob.getParent().getLocalname());
+
+        Resource knows = property(read, "knows");
+        assertEquals(1, knows.getLinks().size());
+        assertEquals(1, knows.getObjects(alice).size());
+        assertTrue(knows.getObjects(alice).get(0) == bob);
+        assertTrue(knows.getSubjects(bob).get(0) == alice);
+    }
+
+    @Test
+    public void literalsAreKept() throws IOException {
+        Ontology read = roundTrip(create());
+
+        Resource alice = read.findByUri("http://example.org/data/alice");
+        List<Resource> objects = property(read, "age").getObjects(alice);
+        assertEquals(1, objects.size());
+        Resource literal = objects.get(0);
+        assertEquals(Resource.Type.Literal, literal.getType());
+        assertEquals("42", literal.getComment().get(""));
+        assertEquals("http://www.w3.org/2001/XMLSchema#int", literal.getComment().get("datatype"));
+    }
+
+    @Test
+    public void fileIsSavedAndLoadedByExtension() throws IOException {
+        File file = folder.newFile("ex." + OntologyBinary.EXTENSION);
+        create().save(file);
+
+        Ontology read = Ontology.load(file);
+        assertEquals("ex", read.getPrefix());
+        assertEquals("Person", read.getRootClasses().get(0).getLocalname());
+        assertNotNull(read.getLoadStatistics());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherContentIsRejected() throws IOException {
+        byte[] ttl = "@prefix ex: <http://example.org/ex#> .".getBytes(StandardCharsets.UTF_8);
+        OntologyBinary.read(new ByteArrayInputStream(ttl), false);
+    }
+
+}
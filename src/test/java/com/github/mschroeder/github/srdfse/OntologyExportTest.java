@@ -0,0 +1,96 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Test;
+
+/**
+ * The ABox is generated in parallel partitions but handed over in order,
+ * and the Turtle export can be loaded again.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OntologyExportTest {
+
+    //more instances than fit in one partition
+    private static Ontology create(int classes, int instancesPerClass) {
+        Ontology onto = new Ontology();
+        onto.setPrefix("ex");
+        onto.setUri("http://example.org/ex");
+        onto.setFragment("#");
+        onto.setInstancePrefix("data");
+        onto.setInstanceNamespace("http://example.org/data/");
+
+        Resource knows = new Resource(onto, Resource.Type.Property);
+        knows.setLocalname("knows");
+        onto.addRoot(knows);
+
+        Resource previous = null;
+        for (int c = 0; c < classes; c++) {
+            Resource clazz = new Resource(onto, Resource.Type.Class);
+            clazz.setLocalname("C" + c);
+            onto.addRoot(clazz);
+            for (int i = 0; i < instancesPerClass; i++) {
+                Resource inst = new Resource(onto, Resource.Type.Instance);
+                inst.setLocalname("c" + c + "i" + i);
+                clazz.addInstance(inst);
+                if (previous != null) {
+                    knows.addLink(previous, inst);
+                }
+                previous = inst;
+            }
+        }
+        return onto;
+    }
+
+    @Test
+    public void partitionsAreHandedOverInOrder() {
+        Ontology onto = create(5, 6000);
+
+        List<Triple> triples = new ArrayList<>();
+        onto.writeABox(new TripleReader.Handler() {
+            @Override
+            public void prefix(String prefix, String uri) {
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                triples.add(triple);
+            }
+        });
+
+        //one type per instance, the classes in order
+        int types = 0;
+        int lastClass = -1;
+        for (Triple t : triples) {
+            if (t.getPredicate().equals(RDF.type.asNode())) {
+                int clazz = Integer.parseInt(t.getObject().getLocalName().substring(1));
+                assertTrue(clazz >= lastClass);
+                lastClass = clazz;
+                types++;
+            }
+        }
+        assertEquals(5 * 6000, types);
+        assertEquals(triples.size(), new HashSet<>(triples).size());
+        assertEquals(triples.size(), onto.getABoxModel().size());
+    }
+
+    @Test
+    public void turtleIsLoadedAgain() {
+        Ontology onto = create(3, 10);
+        String ttl = onto.toTTL();
+
+        Ontology read = Ontology.loadTTL("ex.ttl", new ByteArrayInputStream(ttl.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, read.getRootClasses().size());
+        assertEquals(10, read.findClassByLocalname("C1").getInstances().size());
+        assertEquals(29, read.getRootProperties().get(0).getLinks().size());
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Test;
+
+/**
+ * Frames are written in order without growing the stack, and a client is
+ * disconnected instead of silently losing a frame it can not detect.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class OutboxTest {
+
+    //a websocket session which records the frames and the close code
+    private static class FakeSession {
+
+        private List<String> sent = new ArrayList<>();
+        private List<WriteCallback> pending = new ArrayList<>();
+        private boolean confirmAtOnce;
+        private int closeCode;
+
+        private Session session() {
+            RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("sendString") && args.length == 2) {
+                            sent.add((String) args[0]);
+                            WriteCallback callback = (WriteCallback) args[1];
+                            if (confirmAtOnce) {
+                                callback.writeSuccess();
+                            } else {
+                                pending.add(callback);
+                            }
+                        }
+                        return null;
+                    });
+            return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("getRemote")) {
+                            return remote;
+                        }
+                        if (method.getName().equals("close")) {
+                            closeCode = args != null && args.length == 2 ? (Integer) args[0] : -1;
+                        }
+                        return null;
+                    });
+        }
+    }
+
+    @Test
+    public void confirmedAtOnceDoesNotRecurse() {
+        FakeSession fake = new FakeSession();
+        Outbox outbox = new Outbox(fake.session(), new Outbox.Metrics(), 200000, 60000);
+
+        //queued while the first frame is not confirmed
+        outbox.offer("patch", "0");
+        for (int i = 1; i < 100000; i++) {
+            outbox.offer("patch", String.valueOf(i));
+        }
+        fake.confirmAtOnce = true;
+        fake.pending.remove(0).writeSuccess();
+
+        assertEquals(100000, fake.sent.size());
+        for (int i = 0; i < fake.sent.size(); i++) {
+            assertEquals(String.valueOf(i), fake.sent.get(i));
+        }
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void fullQueueDropsPatches() {
+        FakeSession fake = new FakeSession();
+        Outbox.Metrics metrics = new Outbox.Metrics();
+        Outbox outbox = new Outbox(fake.session(), metrics, 4, 60000);
+
+        //the first one is written, 4 are queued
+        for (int i = 0; i < 7; i++) {
+            outbox.offer("patch", String.valueOf(i));
+        }
+        assertFalse(outbox.isClosed());
+        assertEquals(4, outbox.size());
+        assertEquals(2, metrics.getDropped());
+    }
+
+    @Test
+    public void fullQueueWithoutPatchesDisconnects() {
+        FakeSession fake = new FakeSession();
+        Outbox.Metrics metrics = new Outbox.Metrics();
+        Outbox outbox = new Outbox(fake.session(), metrics, 3, 60000);
+
+        outbox.offer("created", "0");
+        outbox.offer("created", "1");
+        outbox.offer("removed", "2");
+        outbox.offer("created", "3");
+        assertFalse(outbox.isClosed());
+
+        //a snapshot is never dropped
+        outbox.offer("init", "4");
+        assertTrue(outbox.isClosed());
+        assertEquals(1008, fake.closeCode);
+        assertEquals(1, metrics.getDisconnected());
+        assertEquals(0, metrics.getDropped());
+    }
+
+    @Test
+    public void stalledClientIsDisconnectedByTheCheck() throws InterruptedException {
+        FakeSession fake = new FakeSession();
+        Outbox outbox = new Outbox(fake.session(), new Outbox.Metrics(), 16, 10);
+
+        outbox.offer("patch", "0");
+        outbox.checkProgress();
+        assertFalse(outbox.isClosed());
+
+        Thread.sleep(50);
+        outbox.checkProgress();
+        assertTrue(outbox.isClosed());
+        assertEquals(1008, fake.closeCode);
+    }
+
+}
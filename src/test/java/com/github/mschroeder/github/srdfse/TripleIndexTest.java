@@ -0,0 +1,101 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Test;
+
+/**
+ * A file may state a triple more than once, it is loaded once.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class TripleIndexTest {
+
+    private static final String EX = "http://example.org/ex#";
+
+    private static final String DUPLICATES
+            = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+            + "ex:A a rdfs:Class .\n"
+            + "ex:B a rdfs:Class .\n"
+            + "ex:B rdfs:subClassOf ex:A .\n"
+            + "ex:B rdfs:subClassOf ex:A .\n"
+            + "ex:B rdfs:label \"B\"@en .\n"
+            + "ex:B rdfs:label \"B\"@en .\n"
+            + "ex:A a rdfs:Class .\n";
+
+    private static InputStream stream(String ttl) {
+        return new ByteArrayInputStream(ttl.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void duplicatesAreIndexedOnce() {
+        TripleIndex index = new TripleIndex();
+        TripleReader.read(TripleReader.Syntax.Turtle, stream(DUPLICATES), index);
+
+        assertEquals(4, index.getTripleCount());
+        assertEquals(2, index.size());
+
+        TripleIndex.Subject b = index.get(NodeFactory.createURI(EX + "B"));
+        assertEquals(1, b.getTypes().size());
+        assertEquals(1, b.getSubClassOf().size());
+        assertEquals(1, b.getLabel().size());
+    }
+
+    @Test
+    public void otherTriplesAreHandedOn() {
+        StringBuilder ttl = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        ttl.append("ex:s a ex:C .\n");
+        for (int i = 0; i < 20; i++) {
+            ttl.append("ex:s ex:p ex:o").append(i).append(" .\n");
+        }
+        //a blank node can not be linked
+        ttl.append("ex:s ex:p [] .\n");
+        ttl.append("[] ex:p ex:o0 .\n");
+
+        PredicateIndex links = new PredicateIndex();
+        TripleIndex index = new TripleIndex(links);
+        TripleReader.read(TripleReader.Syntax.Turtle, stream(ttl.toString()), index);
+
+        assertEquals(23, index.getTripleCount());
+        assertEquals(1, index.size());
+        assertEquals(20, links.getTripleCount());
+        assertEquals(20, links.get(NodeFactory.createURI(EX + "p")).size());
+    }
+
+    @Test
+    public void duplicateLinksAreLoadedOnce() {
+        StringBuilder ttl = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        ttl.append("@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n");
+        ttl.append("ex:C a rdfs:Class .\n");
+        ttl.append("ex:p a rdf:Property .\n");
+        for (int round = 0; round < 2; round++) {
+            ttl.append("ex:s a ex:C .\n");
+            ttl.append("ex:t a ex:C .\n");
+            ttl.append("ex:s ex:p ex:t .\n");
+            ttl.append("ex:s ex:p \"text\" .\n");
+        }
+        Ontology onto = Ontology.loadTTL("ex.ttl", stream("@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n" + ttl));
+
+        Resource p = onto.findByUri(EX + "p");
+        assertNotNull(p);
+        assertEquals(2, p.getLinks().size());
+    }
+
+    @Test
+    public void duplicatesAreLoadedOnce() {
+        Ontology onto = Ontology.loadTTL("ex.ttl", stream(DUPLICATES));
+
+        assertEquals(4, onto.getLoadStatistics().getTriples());
+
+        Resource a = onto.findClassByLocalname("A");
+        assertNotNull(a);
+        assertEquals(1, a.getChildren().size());
+        assertEquals("B", a.getChildren().get(0).getLocalname());
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.github.mschroeder.github.srdfse;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.Test;
+
+/**
+ * The syntax is detected once and triples arrive while the stream is read.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class TripleReaderTest {
+
+    private static final String EX = "http://example.org/ex#";
+
+    private static final String TURTLE
+            = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+            + "ex:A a rdfs:Class .\n"
+            + "ex:B rdfs:subClassOf ex:A .\n";
+
+    private static final String NTRIPLES
+            = "<" + EX + "A> <" + RDF.type.getURI() + "> <" + RDFS.Class.getURI() + "> .\n"
+            + "<" + EX + "B> <" + RDFS.subClassOf.getURI() + "> <" + EX + "A> .\n";
+
+    private static final String RDFXML
+            = "<?xml version=\"1.0\"?>\n"
+            + "<rdf:RDF xmlns:rdf=\"" + RDF.getURI() + "\" xmlns:rdfs=\"" + RDFS.getURI() + "\" xmlns:ex=\"" + EX + "\">\n"
+            + "  <rdfs:Class rdf:about=\"" + EX + "A\"/>\n"
+            + "  <rdf:Description rdf:about=\"" + EX + "B\">\n"
+            + "    <rdfs:subClassOf rdf:resource=\"" + EX + "A\"/>\n"
+            + "  </rdf:Description>\n"
+            + "</rdf:RDF>\n";
+
+    private static final List<Triple> EXPECTED = new ArrayList<>();
+    static {
+        EXPECTED.add(Triple.create(NodeFactory.createURI(EX + "A"), RDF.type.asNode(), RDFS.Class.asNode()));
+        EXPECTED.add(Triple.create(NodeFactory.createURI(EX + "B"), RDFS.subClassOf.asNode(), NodeFactory.createURI(EX + "A")));
+    }
+
+    //remembers what it got
+    private static class Collector implements TripleReader.Handler {
+
+        private Map<String, String> prefixes = new LinkedHashMap<>();
+        private List<Triple> triples = new ArrayList<>();
+
+        @Override
+        public void prefix(String prefix, String uri) {
+            prefixes.put(prefix, uri);
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            triples.add(triple);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(bytes(text));
+    }
+
+    private static TripleReader.Syntax detect(String filename, String text) {
+        byte[] head = bytes(text);
+        return TripleReader.detect(filename, head, head.length);
+    }
+
+    @Test
+    public void detectsTheSyntax() {
+        assertEquals(TripleReader.Syntax.Turtle, detect("a.ttl", TURTLE));
+        assertEquals(TripleReader.Syntax.Turtle, detect("a.n3", TURTLE));
+        assertEquals(TripleReader.Syntax.NTriples, detect("a.nt", NTRIPLES));
+        assertEquals(TripleReader.Syntax.RDFXML, detect("a.owl", RDFXML));
+
+        //a clear xml head wins over the extension
+        assertEquals(TripleReader.Syntax.RDFXML, detect("a.ttl", RDFXML));
+        assertEquals(TripleReader.Syntax.RDFXML, detect(null, "﻿ \n" + RDFXML));
+
+        //turtle is the fallback
+        assertEquals(TripleReader.Syntax.Turtle, detect(null, TURTLE));
+        assertEquals(TripleReader.Syntax.Turtle, detect("a.unknown", NTRIPLES));
+    }
+
+    @Test
+    public void readsEverySyntax() {
+        Collector turtle = new Collector();
+        TripleReader.read("a.ttl", stream(TURTLE), turtle);
+        assertEquals(EXPECTED, turtle.triples);
+        assertEquals(EX, turtle.prefixes.get("ex"));
+        assertEquals(RDFS.getURI(), turtle.prefixes.get("rdfs"));
+
+        Collector ntriples = new Collector();
+        TripleReader.read("a.nt", stream(NTRIPLES), ntriples);
+        assertEquals(EXPECTED, ntriples.triples);
+        assertTrue(ntriples.prefixes.isEmpty());
+
+        Collector rdfxml = new Collector();
+        TripleReader.read("a.rdf", stream(RDFXML), rdfxml);
+        assertEquals(EXPECTED, rdfxml.triples);
+        assertEquals(EX, rdfxml.prefixes.get("ex"));
+    }
+
+    @Test
+    public void resolvesRelativeURIsAgainstTheFileName() {
+        String ttl = "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+                + "<#A> a rdfs:Class .\n";
+
+        Collector byName = new Collector();
+        TripleReader.read("dir/my onto.ttl", stream(ttl), byName);
+        assertEquals("file:///my%20onto.ttl#A", byName.triples.get(0).getSubject().getURI());
+
+        Collector byBase = new Collector();
+        TripleReader.read(TripleReader.Syntax.Turtle, EX, stream(ttl), byBase);
+        assertEquals(EX + "A", byBase.triples.get(0).getSubject().getURI());
+
+        String xml = "<?xml version=\"1.0\"?>\n"
+                + "<rdf:RDF xmlns:rdf=\"" + RDF.getURI() + "\" xmlns:rdfs=\"" + RDFS.getURI() + "\">\n"
+                + "  <rdfs:Class rdf:about=\"#A\"/>\n"
+                + "</rdf:RDF>\n";
+        Collector rdfxml = new Collector();
+        TripleReader.read("onto.rdf", stream(xml), rdfxml);
+        //arp writes the base in its short form file:/
+        String uri = rdfxml.triples.get(0).getSubject().getURI();
+        assertTrue(uri, uri.startsWith("file:/") && uri.endsWith("/onto.rdf#A"));
+    }
+
+    @Test
+    public void handsOnTriplesWhileReading() {
+        StringBuilder ttl = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        for (int i = 0; i < 100000; i++) {
+            ttl.append("ex:s").append(i).append(" ex:p ex:o").append(i).append(" .\n");
+        }
+        byte[] content = bytes(ttl.toString());
+
+        long[] read = new long[1];
+        InputStream counting = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int r = super.read(b, off, len);
+                read[0] += Math.max(r, 0);
+                return r;
+            }
+        };
+
+        RuntimeException stop = new RuntimeException("stop");
+        try {
+            TripleReader.read("a.ttl", counting, new TripleReader.Handler() {
+                @Override
+                public void prefix(String prefix, String uri) {
+                }
+
+                @Override
+                public void triple(Triple triple) {
+                    throw stop;
+                }
+            });
+            fail();
+        } catch (RuntimeException ex) {
+            //the parser wraps what the handler throws
+            assertTrue(ex == stop || ex.getCause() == stop);
+        }
+
+        //only the head of the file was needed for the first triple
+        assertTrue(read[0] + " of " + content.length, read[0] < content.length / 10);
+    }
+
+}
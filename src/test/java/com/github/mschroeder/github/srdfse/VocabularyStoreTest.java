@@ -0,0 +1,42 @@
+package com.github.mschroeder.github.srdfse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * The presets are loaded once with the single pass loader and shared.
+ *
+ * @author Markus Schr&ouml;der
+ */
+public class VocabularyStoreTest {
+
+    private static final String[] PRESETS = {
+        "dcs", "dcterms", "doap", "foaf", "owl", "rdf", "rdfs", "thing", "xsd"
+    };
+
+    @Test
+    public void presetsAreLoadedOnceAndShared() {
+        for (String preset : PRESETS) {
+            String path = "/vocab/" + preset + ".ttl";
+            Ontology onto = VocabularyStore.get(path);
+            assertNotNull(path, onto);
+            assertEquals(preset, onto.getPrefix());
+            assertTrue(path, onto.isShared());
+            assertNotNull(path, onto.getLoadStatistics());
+            assertSame(onto, VocabularyStore.get(path));
+        }
+    }
+
+    @Test
+    public void foafHasItsTerms() {
+        Ontology foaf = VocabularyStore.get("/vocab/foaf.ttl");
+        assertFalse(foaf.getRootClasses().isEmpty());
+        assertFalse(foaf.getRootProperties().isEmpty());
+        assertNotNull(foaf.findByUri("http://xmlns.com/foaf/0.1/Person"));
+    }
+
+}